@@ -0,0 +1,217 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.IntSupplier;
+
+/**
+ * <p>
+ * This class holds the operations benchmarked by {@code benchmarks.RegexBenchmark}:
+ * parsing a {@link RegexAST}, {@link NFA#makeNFA}, {@link DFA} construction (single and multiple regex,
+ * Unicode character classes, and a large set of keywords), loading a serialized {@link Lexer},
+ * {@link PatternCache} hits, {@link DFA#match}, {@link Finder#findAll} and {@link RegexSet#matchesAnywhere}
+ * on long inputs and {@link Lexer#tokenize} on a generated source code corpus
+ * </p>
+ *
+ * <p>
+ * JMH only runs benchmarks outside the default package, where the classes of this project cannot be named,
+ * so the benchmark loads each operation by name from this class (in the default package) as an {@link IntSupplier}
+ * whose result JMH consumes. Only the inputs and automata of the operation asked for are built
+ * </p>
+ */
+public class BenchmarkOperations {
+    private static final String IDENTIFIER = Lexer.LETTER + "(" + Lexer.LETTER + "|" + Lexer.DIGIT + "|_)*";
+    private static final String NUMBER = Lexer.DIGIT + "+(\\." + Lexer.DIGIT + "+)?";
+    private static final String IDENTIFIER_OR_NUMBER = "(" + IDENTIFIER + ")|(" + NUMBER + ")";
+    private static final String[] KEYWORDS = {"if", "else", "while", "for", "return", "int", "class", "public",
+            "private", "static", "void", "new", "null", "true", "false"};
+
+    private static final String[] NAMES = {"Keyword", "Identifier", "Number", "Operator", "Punctuation",
+            "WhiteSpace", "Comment"};
+    private static final String[] TOKENS = {String.join("|", KEYWORDS), IDENTIFIER, NUMBER,
+            "\\+|-|\\*|/|%|=|==|<|>|<=|>=|!=|&&|\\|\\||!", "\\(|\\)|\\{|\\}|;|,|\\.",
+            Lexer.WHITESPACE, "//(" + Lexer.LETTER + "|" + Lexer.DIGIT + "| )*\n"};
+    private static final String[] OMITTED = {"WhiteSpace", "Comment"};
+    private static final Map<String, Integer> PRIORITY = Map.of("Keyword", 1);
+
+    private static final String MATCH_REGEX = "(a|b)*a(a|b){3}";
+
+    // Identifiers of letters of any script, everything past ASCII counting as a letter
+    private static final String UNICODE_IDENTIFIER = "[a-zA-Z_\u0080-\uFFFF][a-zA-Z_0-9\u0080-\uFFFF]*";
+
+    private static final String RETURN_REGEX = "return " + IDENTIFIER + ";";
+
+    // The length of the inputs matched, about a million characters
+    private static final int INPUT_LENGTH = 1 << 20;
+
+    /**
+     * Builds what the operation called name needs and returns the operation
+     * @param name The name of a benchmarked operation (one of the parameters of {@code benchmarks.RegexBenchmark})
+     * @return The operation, which returns a result depending on all of its work
+     * @throws IllegalArgumentException If there is no operation called name
+     */
+    public static IntSupplier operation(String name) {
+        switch (name) {
+            case "parseRegexAST":
+                return () -> new RegexAST(IDENTIFIER_OR_NUMBER).hashCode();
+            case "makeNFA":
+                return () -> NFA.makeNFA(IDENTIFIER_OR_NUMBER).acceptStates.size();
+            case "buildDFA":
+                return () -> new DFA(IDENTIFIER_OR_NUMBER).stateCount;
+            case "buildUnicodeDFA":
+                return () -> new DFA(UNICODE_IDENTIFIER).stateCount;
+            case "buildMultiDFA":
+                return () -> new DFA(NAMES, TOKENS).stateCount;
+            case "buildKeywordDFA": {
+                // 800 distinct lowercase words, about the reserved words of a large SQL dialect
+                String reservedWords = makeReservedWords(800);
+                return () -> new DFA(reservedWords).stateCount;
+            }
+            case "loadLexer": {
+                byte[] serialized = serialize(new Lexer(NAMES, PRIORITY, TOKENS));
+                return () -> Lexer.readFrom(ByteBuffer.wrap(serialized)).stateCount;
+            }
+            case "cachedBuildDFA": {
+                PatternCache cache = new PatternCache();
+                return () -> cache.dfa(IDENTIFIER_OR_NUMBER).stateCount;
+            }
+            case "dfaMatch": {
+                DFA dfa = new DFA(MATCH_REGEX);
+                String input = makeMatchInput(INPUT_LENGTH);
+                return () -> dfa.match(input) ? 1 : 0;
+            }
+            case "compiledDFAMatch": {
+                DFA dfa = compiled(new DFA(MATCH_REGEX));
+                String input = makeMatchInput(INPUT_LENGTH);
+                return () -> dfa.match(input) ? 1 : 0;
+            }
+            case "finderFindAll": {
+                Finder finder = new Finder(NUMBER);
+                String corpus = makeCorpus(INPUT_LENGTH);
+                return () -> finder.findAll(corpus).size();
+            }
+            case "finderFindAllLiteral": {
+                Finder finder = new Finder(RETURN_REGEX);
+                String corpus = makeCorpus(INPUT_LENGTH);
+                return () -> finder.findAll(corpus).size();
+            }
+            case "regexSetMatchesAnywhere": {
+                RegexSet set = new RegexSet(KEYWORDS);
+                String corpus = makeCorpus(INPUT_LENGTH);
+                return () -> set.matchesAnywhere(corpus).cardinality();
+            }
+            case "lazyDFAMatch": {
+                LazyDFA dfa = new LazyDFA(MATCH_REGEX);
+                String input = makeMatchInput(INPUT_LENGTH);
+                return () -> dfa.match(input) ? 1 : 0;
+            }
+            case "nfaMatch": {
+                NFA nfa = NFA.makeNFA(MATCH_REGEX);
+                String input = makeMatchInput(INPUT_LENGTH);
+                return () -> nfa.match(input) ? 1 : 0;
+            }
+            case "lexerTokenize": {
+                Lexer lexer = new Lexer(NAMES, PRIORITY, TOKENS, OMITTED);
+                String corpus = makeCorpus(INPUT_LENGTH);
+                return () -> lexer.init(corpus).tokenize().length;
+            }
+            case "lexerAdvance": {
+                Lexer lexer = new Lexer(NAMES, PRIORITY, TOKENS, OMITTED);
+                String corpus = makeCorpus(INPUT_LENGTH);
+                return () -> {
+                    lexer.init(corpus);
+                    int tokens = 0;
+                    while (lexer.advance()) {
+                        tokens += lexer.tokenType();
+                    }
+                    return tokens;
+                };
+            }
+            case "lexerTokenizeInto":
+                return tokenizeInto(new Lexer(NAMES, PRIORITY, TOKENS, OMITTED), false);
+            case "compiledLexerTokenizeInto":
+                return tokenizeInto(compiled(new Lexer(NAMES, PRIORITY, TOKENS, OMITTED)), false);
+            case "lexerTokenizeParallel":
+                return tokenizeInto(new Lexer(NAMES, PRIORITY, TOKENS, OMITTED), true);
+            default:
+                throw new IllegalArgumentException("Unknown benchmark operation " + name);
+        }
+    }
+
+    // Tokenizes the corpus into a reused buffer, on several threads if parallel
+    private static IntSupplier tokenizeInto(Lexer lexer, boolean parallel) {
+        String corpus = makeCorpus(INPUT_LENGTH);
+        Lexer.TokenBuffer buffer = new Lexer.TokenBuffer();
+        return () -> {
+            buffer.clear();
+            if (parallel)
+                lexer.init(corpus).tokenizeParallelInto(buffer);
+            else
+                lexer.init(corpus).tokenizeInto(buffer);
+            return buffer.size();
+        };
+    }
+
+    private static <T extends DFA> T compiled(T dfa) {
+        if (dfa.compileAfter(0).compiled() == null)
+            System.err.println("Could not compile a DFA, the compiled benchmarks use its tables");
+        return dfa;
+    }
+
+    private static String makeMatchInput(int length) {
+        Random random = new Random(0);
+        StringBuilder input = new StringBuilder(length);
+        for (int i = 0; i < length - 4; i++) {
+            input.append(random.nextBoolean() ? 'a' : 'b');
+        }
+        return input.append("abab").toString();
+    }
+
+    private static String makeCorpus(int length) {
+        String[] lines = {
+                "public static int fib(int n) {\n",
+                "    // Returns the nth Fibonacci number\n",
+                "    if (n <= 1)\n",
+                "        return n;\n",
+                "    int previous = 0, current = 1;\n",
+                "    for (int i = 2; i <= n; i = i + 1) {\n",
+                "        int next = previous + current * 1 % 3.25;\n",
+                "        previous = current;\n",
+                "        current = next;\n",
+                "    }\n",
+                "    return current != null && !false;\n",
+                "}\n"};
+        StringBuilder corpus = new StringBuilder(length);
+        while (corpus.length() < length) {
+            for (String line : lines) {
+                corpus.append(line);
+            }
+        }
+        return corpus.toString();
+    }
+
+    private static String makeReservedWords(int count) {
+        Random random = new Random(0);
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < count) {
+            StringBuilder word = new StringBuilder();
+            int length = 2 + random.nextInt(11);
+            for (int i = 0; i < length; i++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words.add(word.toString());
+        }
+        return String.join("|", words);
+    }
+
+    private static byte[] serialize(DFA dfa) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            dfa.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,48 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * <p>
+ * This class is the JMH benchmark of the construction and matching of the automata in this project,
+ * where each operation (see {@code BenchmarkOperations}) is a value of {@code operation}, so that JMH runs it in a
+ * JVM of its own which only builds the inputs and automata of that operation
+ * </p>
+ *
+ * <p>
+ * Run with {@code gradle jmh}, passing JMH options with {@code -Pjmh="..."},
+ * e.g. {@code gradle jmh -Pjmh="-p operation=dfaMatch,lexerTokenize"} to only run those operations
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegexBenchmark {
+    @Param({"parseRegexAST", "makeNFA", "buildDFA", "buildUnicodeDFA", "buildMultiDFA", "buildKeywordDFA",
+            "loadLexer", "cachedBuildDFA", "dfaMatch", "compiledDFAMatch", "finderFindAll", "finderFindAllLiteral",
+            "regexSetMatchesAnywhere", "lazyDFAMatch", "nfaMatch", "lexerTokenize", "lexerAdvance",
+            "lexerTokenizeInto", "compiledLexerTokenizeInto", "lexerTokenizeParallel"})
+    public String operation;
+
+    // Not final, so that the JIT cannot treat the operation or its inputs as constants
+    private IntSupplier benchmarked;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        // The classes of this project are in the default package, which cannot be named from here
+        benchmarked = (IntSupplier) Class.forName("BenchmarkOperations")
+                .getMethod("operation", String.class).invoke(null, operation);
+    }
+
+    @Benchmark
+    public int run() {
+        // JMH consumes the result, so the work it depends on cannot be removed
+        return benchmarked.getAsInt();
+    }
+}
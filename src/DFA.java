@@ -1,4 +1,14 @@
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>
@@ -19,23 +29,23 @@ public class DFA {
         // If Node is an acceptState, these are what it matches (for use in Lexer)
         Set<String> regexMatch;
 
-        // For use in traversals
-        boolean marked = false;
+        // Transitions, neighbors[cls] is the Node reached on a character of class cls of the NFA (or null)
+        Node[] neighbors;
 
-        // true iff this Node's neighbors field has been finished
-        boolean neighborSet = false;
+        // The set of ids of the NFA nodes this Node represents
+        BitSet set;
 
-        // Transitions
-        Map<Character, Node> neighbors = new HashMap<>();
-
-        // The set of NFA nodes this Node represents
-        Set<NFA.Node> set;
-
-        Node(Set<NFA.Node> set) {
+        Node(BitSet set, int classCount) {
             this.set = set;
+            this.neighbors = new Node[classCount];
         }
+    }
+
+    // A matcher specialized to one DFA, see compileAfter and CompiledDFA
+    interface Compiled {
+        boolean matches(String input);
 
-        Node() {}
+        long longestMatchAt(String input, int from);
     }
 
     /**
@@ -51,8 +61,35 @@ public class DFA {
         return name.toString();
     }
 
-    Node startState;
-    List<Node> acceptStates = new ArrayList<>();
+    /**
+     * The value in {@code table} for a missing transition
+     */
+    static final int DEAD = -1;
+
+    // Compiled form of the DFA (built by compile) where states are numbered 0 to stateCount-1
+    // and characters are partitioned into equivalence classes which every state treats the same way
+    int stateCount;
+    int classCount;
+    int start;
+    // classMap[c >>> 8][c & 0xFF] is the class of c (identical blocks are shared)
+    char[][] classMap;
+    // table[state * classCount + class] is the state reached, or DEAD
+    int[] table;
+    // label[state] is NOT_ACCEPTING, or the index in labels of what an accepting state matches
+    int[] label;
+    // The distinct sets of names matched by accepting states (null for an unlabeled DFA)
+    List<Set<String>> labels;
+
+    /**
+     * The value in {@code label} for a state which is not accepting
+     */
+    static final int NOT_ACCEPTING = -1;
+
+    // Tiered compilation (see compileAfter): uses are counted atomically (matching may be done by several threads
+    // at once) until compileThreshold, then this DFA is compiled and matching uses compiled instead of the tables
+    private volatile Compiled compiled;
+    private volatile int compileThreshold = -1;
+    private final AtomicInteger uses = new AtomicInteger();
 
     /**
      * Constructs a DFA that matches any of the given regular expressions
@@ -85,351 +122,799 @@ public class DFA {
         initFrom(nfa);
     }
 
+    // Constructs an empty DFA to be filled in by readAutomaton
+    DFA() {
+    }
+
     private void initFrom(NFA nfa) {
-        List<Node> allNodes = new ArrayList<>();
+        // Every character class of nfa is a column (see NFA.partition),
+        // and a transition on the characters first to last is on the columns columnOf[first] to columnOf[last]
+        char[] columnOf = nfa.partition();
+        int columnCount = 1;
+        for (char column : columnOf) {
+            columnCount = Math.max(columnCount, column + 1);
+        }
 
-        Set<NFA.Node> startSet = closure(List.of(nfa.startState));
+        List<Node> acceptStates = new ArrayList<>();
+        if (isDeterministic(nfa, columnOf, columnCount)) {
+            // Every set of NFA Nodes reached is a single Node, so the subset construction is skipped and each NFA
+            // Node becomes a Node. This is the case for a regex which is a bare alternation of literals (a trie of
+            // keywords), but not for a trie among other regexes, e.g. in a Lexer, whose start has empty transitions
+            Node[] nodes = new Node[nfa.states.length];
+            for (int id = 0; id < nodes.length; id++) {
+                // The set of a Node is only needed to find what it matches, which is known here
+                nodes[id] = new Node(null, columnCount);
+                if (nfa.finalStates.get(id)) {
+                    acceptStates.add(nodes[id]);
+                    String name = nfa.states[id].regexMatch;
+                    nodes[id].regexMatch = name == null ? null : new HashSet<>(Set.of(name));
+                }
+            }
+            for (int id = 0; id < nodes.length; id++) {
+                for (int k = 0; k < nfa.edgeFirst[id].length; k++) {
+                    int first = firstColumn(nfa, columnOf, id, k);
+                    int last = lastColumn(nfa, columnOf, columnCount, id, k);
+                    Arrays.fill(nodes[id].neighbors, first, last + 1, nodes[nfa.edgeTargets[id][k]]);
+                }
+            }
+            compile(nodes[nfa.startState.id], acceptStates, columnOf, columnCount);
+            return;
+        }
+
+        BitSet startSet = new BitSet();
+        nfa.addClosure(nfa.startState.id, startSet);
 
-        startState = new Node(startSet);
-        allNodes.add(startState);
+        Node startState = new Node(startSet, columnCount);
+
+        // Maps each set of NFA Nodes discovered so far to the Node representing it
+        Map<BitSet, Node> nodes = new HashMap<>();
+        nodes.put(startSet, startState);
 
         // Add startState to acceptStates if startSet contains any of nfa's acceptStates
-        if (containsFinalState(nfa.acceptStates, startSet))
+        if (startSet.intersects(nfa.finalStates)) {
             acceptStates.add(startState);
+            initRegexMatch(nfa, startState);
+        }
 
-        // Nodes to be set
-        Queue<Node> nodeLine = new LinkedList<>();
+        // Nodes to be set, every Node is added exactly once (when it is created)
+        Queue<Node> nodeLine = new ArrayDeque<>();
         // Beginning with startState
         nodeLine.add(startState);
 
         while (!nodeLine.isEmpty()) {
             Node currentNode = nodeLine.poll();
 
-            // Map each character to the set of NFA Nodes that can be reached from currentNode.set
-            Map<Character, Set<NFA.Node>> transition = new HashMap<>();
+            // Map each column to the set of NFA Nodes that can be reached from currentNode.set
+            BitSet[] transition = new BitSet[columnCount];
 
             // Initialize transition
-            for (NFA.Node node : currentNode.set) {
-                for (Character c : node.neighbors.keySet()) {
-                    // Ignore empty transitions
-                    if (c == '\0')
-                        continue;
-
-                    if (!transition.containsKey(c))
-                        transition.put(c, new HashSet<>());
-                    transition.get(c).addAll(closure(node.neighbors.get(c)));
+            for (int id = currentNode.set.nextSetBit(0); id >= 0; id = currentNode.set.nextSetBit(id + 1)) {
+                for (int k = 0; k < nfa.edgeFirst[id].length; k++) {
+                    int last = lastColumn(nfa, columnOf, columnCount, id, k);
+                    for (int column = firstColumn(nfa, columnOf, id, k); column <= last; column++) {
+                        if (transition[column] == null)
+                            transition[column] = new BitSet();
+                        nfa.addClosure(nfa.edgeTargets[id][k], transition[column]);
+                    }
                 }
             }
 
-            // Initialize currentNode.transition (using put)
-            for (Character c : transition.keySet()) {
-                Set<NFA.Node> set = transition.get(c);
-                Node neighbor = getOrCreateNode(allNodes, set);
-                currentNode.neighbors.put(c, neighbor);
+            // Initialize currentNode.neighbors
+            for (int column = 0; column < columnCount; column++) {
+                BitSet set = transition[column];
+                if (set == null)
+                    continue;
+                Node neighbor = nodes.get(set);
 
-                // If neighbor has not yet been processed or added to nodeLine, then add it to nodeLine
-                if (!neighbor.neighborSet && !nodeLine.contains(neighbor) && neighbor != currentNode) {
+                // If set has not been seen before, then create its Node and add it to nodeLine
+                if (neighbor == null) {
+                    neighbor = new Node(set, columnCount);
+                    nodes.put(set, neighbor);
                     nodeLine.add(neighbor);
-                    allNodes.add(neighbor);
 
                     // If neighbor.set (= set) contains an accept state of nfa, then add neighbor to acceptStates
-                    if (containsFinalState(nfa.acceptStates, set)) {
+                    if (set.intersects(nfa.finalStates)) {
                         acceptStates.add(neighbor);
-                        initRegexMatch(nfa.acceptStates, neighbor);
+                        initRegexMatch(nfa, neighbor);
                     }
                 }
-            }
 
-            // Mark currentNode as initialized
-            currentNode.neighborSet = true;
+                currentNode.neighbors[column] = neighbor;
+            }
         }
 
-        // Remove information in Nodes that doesn't pertain to transitions
-        clearPowerSetStates(allNodes);
+        // Build the (minimal) transition table used for matching
+        compile(startState, acceptStates, columnOf, columnCount);
+    }
 
-        // Make into a minimal DFA
-        //minimize();
+    // Returns the first column of the kth transition of nfa.states[id] (a wildcard transition is on every column)
+    private static int firstColumn(NFA nfa, char[] columnOf, int id, int k) {
+        char first = nfa.edgeFirst[id][k];
+        return first == Character.MIN_VALUE && nfa.edgeLast[id][k] == Character.MAX_VALUE ? 0 : columnOf[first];
     }
 
-    private void initRegexMatch(List<NFA.Node> finalStates, Node node) {
-        node.regexMatch = new HashSet<>();
+    // Returns the last column of the kth transition of nfa.states[id]
+    private static int lastColumn(NFA nfa, char[] columnOf, int columnCount, int id, int k) {
+        char last = nfa.edgeLast[id][k];
+        return nfa.edgeFirst[id][k] == Character.MIN_VALUE && last == Character.MAX_VALUE ?
+                columnCount - 1 : columnOf[last];
+    }
 
-        for (NFA.Node n : node.set) {
-            if (finalStates.contains(n)) {
-                if (n.regexMatch == null) {
-                    node.regexMatch = null;
-                    break;
+    // Returns true if nfa has no empty transitions and at most one transition on each column from each Node
+    private static boolean isDeterministic(NFA nfa, char[] columnOf, int columnCount) {
+        // The Node (plus one) which last had a transition on each column
+        int[] seen = new int[columnCount];
+        for (int id = 0; id < nfa.states.length; id++) {
+            if (nfa.emptyTargets[id].length > 0)
+                return false;
+            for (int k = 0; k < nfa.edgeFirst[id].length; k++) {
+                int last = lastColumn(nfa, columnOf, columnCount, id, k);
+                for (int column = firstColumn(nfa, columnOf, id, k); column <= last; column++) {
+                    if (seen[column] == id + 1)
+                        return false;
+                    seen[column] = id + 1;
                 }
-                node.regexMatch.add(n.regexMatch);
             }
         }
+        return true;
     }
 
-    // Turns the current DFA into an equivalent minimal DFA (with fewest states)
-    private void minimize() {
-        // Maps Nodes to the sets containing them
-        Map<Node, Set<Node>> membership = new HashMap<>();
+    // Numbers the states reachable from startState and builds the minimal transition table
+    private void compile(Node startState, List<Node> acceptStates, char[] columnOf, int columnCount) {
+        // Number the states in breadth-first order, so that startState is 0
+        Map<Node, Integer> ids = new HashMap<>();
+        List<Node> order = new ArrayList<>();
+        ids.put(startState, 0);
+        order.add(startState);
+        for (int i = 0; i < order.size(); i++) {
+            for (Node neighbor : order.get(i).neighbors) {
+                if (neighbor != null && !ids.containsKey(neighbor)) {
+                    ids.put(neighbor, order.size());
+                    order.add(neighbor);
+                }
+            }
+        }
+
+        stateCount = order.size();
+        start = 0;
+        int[] columnTable = new int[stateCount * columnCount];
+        label = new int[stateCount];
+        labels = new ArrayList<>();
+        Map<Set<String>, Integer> labelIds = new HashMap<>();
 
         Set<Node> finalStates = new HashSet<>(acceptStates);
-        for (Node finalState : finalStates) {
-            membership.put(finalState, finalStates);
+        for (int state = 0; state < stateCount; state++) {
+            Node node = order.get(state);
+            for (int column = 0; column < columnCount; column++) {
+                Node neighbor = node.neighbors[column];
+                columnTable[state * columnCount + column] = neighbor == null ? DEAD : ids.get(neighbor);
+            }
+
+            if (finalStates.contains(node)) {
+                label[state] = labelIds.computeIfAbsent(node.regexMatch, names -> {
+                    labels.add(names);
+                    return labels.size() - 1;
+                });
+            } else
+                label[state] = NOT_ACCEPTING;
         }
 
-        Set<Node> notFinalStates = new HashSet<>();
-        initNotFinal(startState, notFinalStates);
-        for (Node notFinalState : notFinalStates) {
-            membership.put(notFinalState, notFinalStates);
+        // Make into a minimal DFA
+        columnTable = minimize(columnTable, columnCount);
+
+        partitionAlphabet(columnTable, columnCount, columnOf);
+    }
+
+    // Turns the DFA given by columnTable into an equivalent minimal DFA (with fewest states) using Hopcroft's
+    // algorithm, where accepting states with different labels are kept apart and states which cannot reach an
+    // accepting state are removed; updates stateCount and label and returns the new columnTable
+    private int[] minimize(int[] columnTable, int columnCount) {
+        // The DEAD state is made explicit as state n so that every state has every transition
+        int n = stateCount;
+        int size = n + 1;
+
+        // Inverse transitions: the predecessors of state t on column a are
+        // preds[predStart[a * (size + 1) + t]] to preds[predStart[a * (size + 1) + t + 1] - 1]
+        int[] predStart = new int[columnCount * (size + 1) + 1];
+        for (int state = 0; state < size; state++) {
+            for (int a = 0; a < columnCount; a++) {
+                predStart[a * (size + 1) + target(columnTable, columnCount, state, a) + 1]++;
+            }
+        }
+        for (int i = 1; i < predStart.length; i++) {
+            predStart[i] += predStart[i - 1];
+        }
+        int[] preds = new int[size * columnCount];
+        int[] fill = Arrays.copyOf(predStart, predStart.length);
+        for (int state = 0; state < size; state++) {
+            for (int a = 0; a < columnCount; a++) {
+                preds[fill[a * (size + 1) + target(columnTable, columnCount, state, a)]++] = state;
+            }
         }
 
-        List<Set<Node>> partition = new LinkedList<>();
-        partition.add(notFinalStates);
-        partition.addAll(refineFinalStates(finalStates, membership));
+        // The partition is stored as blocks of consecutive elements in elems,
+        // where block b is elems[blockStart[b]] to elems[blockEnd[b] - 1] and location is the inverse of elems
+        int[] elems = new int[size];
+        int[] location = new int[size];
+        int[] blockOf = new int[size];
+        int[] blockStart = new int[size];
+        int[] blockEnd = new int[size];
+        int[] markedCount = new int[size];
+        int blockCount = 0;
+
+        // Initially, states are grouped by whether they accept and by what they match
+        int[] acceptingBlocks = new int[labels.size()];
+        Arrays.fill(acceptingBlocks, -1);
+        int rejecting = -1;
+        for (int state = 0; state < size; state++) {
+            if (state < n && label[state] != NOT_ACCEPTING) {
+                if (acceptingBlocks[label[state]] == -1)
+                    acceptingBlocks[label[state]] = blockCount++;
+                blockOf[state] = acceptingBlocks[label[state]];
+            } else {
+                if (rejecting == -1)
+                    rejecting = blockCount++;
+                blockOf[state] = rejecting;
+            }
+        }
+        // Counting sort of the states by block
+        for (int state = 0; state < size; state++) {
+            blockEnd[blockOf[state]]++;
+        }
+        for (int block = 0, total = 0; block < blockCount; block++) {
+            blockStart[block] = total;
+            total += blockEnd[block];
+            blockEnd[block] = blockStart[block];
+        }
+        for (int state = 0; state < size; state++) {
+            int block = blockOf[state];
+            elems[blockEnd[block]] = state;
+            location[state] = blockEnd[block]++;
+        }
 
-        boolean done = false;
-        while(!done) {
-            done = true;
+        // Every initial block is a splitter
+        Deque<Integer> worklist = new ArrayDeque<>();
+        boolean[] inWorklist = new boolean[size];
+        for (int block = 0; block < blockCount; block++) {
+            worklist.add(block);
+            inWorklist[block] = true;
+        }
 
-            for (int i = 0; i < partition.size(); i++) {
-                // HOW IS THIS HAPPENING?
-                if (partition.get(i).size() < 1) {
-                    partition.remove(i);
-                    i--;
-                    continue;
+        int[] splitter = new int[size];
+        int[] touched = new int[size];
+        while (!worklist.isEmpty()) {
+            int splitterBlock = worklist.poll();
+            inWorklist[splitterBlock] = false;
+            int splitterSize = blockEnd[splitterBlock] - blockStart[splitterBlock];
+            System.arraycopy(elems, blockStart[splitterBlock], splitter, 0, splitterSize);
+
+            for (int a = 0; a < columnCount; a++) {
+                // Move every predecessor of the splitter on a to the front of its block
+                int touchedCount = 0;
+                for (int i = 0; i < splitterSize; i++) {
+                    int t = a * (size + 1) + splitter[i];
+                    for (int j = predStart[t]; j < predStart[t + 1]; j++) {
+                        int state = preds[j];
+                        int block = blockOf[state];
+                        int front = blockStart[block] + markedCount[block];
+                        if (location[state] < front)
+                            continue;
+                        if (markedCount[block] == 0)
+                            touched[touchedCount++] = block;
+
+                        int other = elems[front];
+                        elems[front] = state;
+                        elems[location[state]] = other;
+                        location[other] = location[state];
+                        location[state] = front;
+                        markedCount[block]++;
+                    }
                 }
 
-                // Refine the current subset
-                Collection<Set<Node>> refinement = refine(partition.get(i), membership);
+                // Split every block which has both marked and unmarked states
+                for (int i = 0; i < touchedCount; i++) {
+                    int block = touched[i];
+                    int marked = markedCount[block];
+                    markedCount[block] = 0;
+                    if (marked == blockEnd[block] - blockStart[block])
+                        continue;
+
+                    int newBlock = blockCount++;
+                    blockStart[newBlock] = blockStart[block];
+                    blockEnd[newBlock] = blockStart[block] + marked;
+                    blockStart[block] = blockEnd[newBlock];
+                    for (int j = blockStart[newBlock]; j < blockEnd[newBlock]; j++) {
+                        blockOf[elems[j]] = newBlock;
+                    }
 
-                // If new subsets were created during refinement,
-                // replace the current subset with those
-                if (refinement.size() > 1) {
-                    partition.remove(i);
-                    partition.addAll(refinement);
-                    i--;
-                    done = false;
+                    if (inWorklist[block]) {
+                        worklist.add(newBlock);
+                        inWorklist[newBlock] = true;
+                    } else {
+                        // It suffices to add the smaller half
+                        int smaller = marked <= blockEnd[block] - blockStart[block] ? newBlock : block;
+                        worklist.add(smaller);
+                        inWorklist[smaller] = true;
+                    }
                 }
             }
         }
 
-        updateDFA(partition, membership);
-    }
-
-    private Collection<Set<Node>> refineFinalStates(Set<Node> finalStates, Map<Node, Set<Node>> membership) {
-        // If you want minimization with accept states possibly belonging to multiple tokens, uncomment the following
-        // return List.of(finalStates);
+        // Number the blocks in breadth-first order from the start state,
+        // where the block of the DEAD state becomes DEAD (unless it contains the start state)
+        int deadBlock = blockOf[n];
+        int[] newId = new int[blockCount];
+        Arrays.fill(newId, DEAD);
+        int[] order = new int[blockCount];
+        int newCount = 0;
+        newId[blockOf[start]] = newCount;
+        order[newCount++] = blockOf[start];
+        for (int i = 0; i < newCount; i++) {
+            int representative = elems[blockStart[order[i]]];
+            for (int a = 0; a < columnCount; a++) {
+                int block = blockOf[target(columnTable, columnCount, representative, a)];
+                if (block != deadBlock && newId[block] == DEAD) {
+                    newId[block] = newCount;
+                    order[newCount++] = block;
+                }
+            }
+        }
 
-        // TODO: This might be problematic if we have "A | B" and "B | A" which should go together but won't.
-        Map<String, Set<Node>> matchRegexToSetMap = new HashMap<>();
-        for (Node node : finalStates) {
-            String name;
-            if (node.regexMatch == null) {
-                name = "\0";
-            } else
-                name = toName(node.regexMatch);
-            if (!matchRegexToSetMap.containsKey(name))
-                matchRegexToSetMap.put(name, new HashSet<>());
-            matchRegexToSetMap.get(name).add(node);
-            membership.put(node, matchRegexToSetMap.get(name));
+        int[] newTable = new int[newCount * columnCount];
+        int[] newLabel = new int[newCount];
+        for (int state = 0; state < newCount; state++) {
+            int representative = elems[blockStart[order[state]]];
+            for (int a = 0; a < columnCount; a++) {
+                newTable[state * columnCount + a] = newId[blockOf[target(columnTable, columnCount, representative, a)]];
+            }
+            newLabel[state] = representative < n ? label[representative] : NOT_ACCEPTING;
         }
 
-        return matchRegexToSetMap.values();
+        stateCount = newCount;
+        start = 0;
+        label = newLabel;
+        return newTable;
     }
 
-    // Given a valid partition, sets this to be a new DFA
-    // whose Nodes correspond to the subsets within the partition
-    private void updateDFA(List<Set<Node>> partition, Map<Node, Set<Node>> membership) {
-        // Maps subsets in partition to the new Nodes that they correspond to
-        Map<Set<Node>, Node> newStates = new HashMap<>();
-
-        // Initialize the correspondence to a bunch of empty Nodes
-        for (Set<Node> subset : partition) {
-            newStates.put(subset, new Node());
-        }
+    // Returns the state reached from state on column a, where DEAD is state stateCount which loops to itself
+    private int target(int[] columnTable, int columnCount, int state, int a) {
+        if (state == stateCount)
+            return stateCount;
+        int next = columnTable[state * columnCount + a];
+        return next == DEAD ? stateCount : next;
+    }
 
-        // This will correspond to all subsets made up of only accepting states
-        List<Node> newAcceptStates = new ArrayList<>();
+    /**
+     * Replaces the labels of the accepting states and then minimizes this DFA again,
+     * merging states which only differed by their old labels
+     * @param newLabel The new label of every state (NOT_ACCEPTING for states which are not accepting)
+     * @param newLabels The distinct sets of names that {@code newLabel} indexes
+     */
+    void relabel(int[] newLabel, List<Set<String>> newLabels) {
+        label = newLabel;
+        labels = newLabels;
 
-        // Set the neighbors field of each new Node
-        for (Set<Node> subset : partition) {
-            // Pick a representative
-            Node representative = subset.iterator().next();
+        int[] classTable = minimize(table, classCount);
 
-            // This corresponds to subset
-            Node newNode = newStates.get(subset);
+        // The current classes become the columns to be partitioned again
+        char[] columnOf = new char[Character.MAX_VALUE + 1];
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            columnOf[c] = classMap[c >>> 8][c & 0xFF];
+        }
+        partitionAlphabet(classTable, classCount, columnOf);
+    }
 
-            // For each transition of the representative, create one for newNode
-            for (Character c : representative.neighbors.keySet()) {
-                Node neighbor = representative.neighbors.get(c);
-                Set<Node> setNeighbor = membership.get(neighbor);
-                newNode.neighbors.put(c, newStates.get(setNeighbor));
+    // Merges the columns of columnTable which agree in every state into a single class,
+    // then sets table to the resulting (classes x states) table and classMap to the char -> class lookup
+    private void partitionAlphabet(int[] columnTable, int columnCount, char[] columnOf) {
+        // Maps the transitions of a column (one per state) to the class of every column with those transitions
+        Map<List<Integer>, Integer> classes = new HashMap<>();
+        char[] classOf = new char[columnCount];
+        List<Integer> representatives = new ArrayList<>();
+        for (int column = 0; column < columnCount; column++) {
+            List<Integer> transitions = new ArrayList<>(stateCount);
+            for (int state = 0; state < stateCount; state++) {
+                transitions.add(columnTable[state * columnCount + column]);
             }
 
-            newNode.neighborSet = true;
+            Integer cls = classes.get(transitions);
+            if (cls == null) {
+                cls = representatives.size();
+                classes.put(transitions, cls);
+                representatives.add(column);
+            }
+            classOf[column] = (char) (int) cls;
+        }
 
-            // If the representative is in acceptStates, then add newNode to newAcceptStates
-            if (acceptStates.contains(representative)) {
-                newAcceptStates.add(newNode);
-                if (representative.regexMatch != null) {
-                    newNode.regexMatch = new HashSet<>();
-                    for (Node node : subset) {
-                        newNode.regexMatch.addAll(node.regexMatch);
-                    }
-                }
+        classCount = representatives.size();
+        table = new int[stateCount * classCount];
+        for (int state = 0; state < stateCount; state++) {
+            for (int cls = 0; cls < classCount; cls++) {
+                table[state * classCount + cls] = columnTable[state * columnCount + representatives.get(cls)];
             }
         }
 
-        // The new startState will be the Node corresponding to the subset containing the old startState
-        startState = newStates.get(membership.get(startState));
-        acceptStates = newAcceptStates;
+        char[] classOfChar = new char[Character.MAX_VALUE + 1];
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            classOfChar[c] = classOf[columnOf[c]];
+        }
+        classMap = toClassMap(classOfChar);
     }
 
-    // Does a depth-first traversal of the graph starting at current
-    // and adds all non-acceptStates to notFinalStates
-    private void initNotFinal(Node current, Set<Node> notFinalStates) {
-        if (!acceptStates.contains(current))
-            notFinalStates.add(current);
+    /**
+     * Returns the two-level lookup for the given map from characters to classes,
+     * where {@code classMap[c >>> 8][c & 0xFF] == classOfChar[c]} and blocks with the same contents are shared
+     * @param classOfChar An array of size 65536 giving the class of every character
+     * @return The two-level char to class lookup
+     */
+    static char[][] toClassMap(char[] classOfChar) {
+        Map<String, char[]> blocks = new HashMap<>();
+        char[][] classMap = new char[256][];
+        for (int high = 0; high < 256; high++) {
+            char[] block = Arrays.copyOfRange(classOfChar, high << 8, (high + 1) << 8);
+            classMap[high] = blocks.computeIfAbsent(new String(block), key -> block);
+        }
+        return classMap;
+    }
 
-        for (Node neighbor : current.neighbors.values()) {
-            if (!neighbor.marked) {
-                neighbor.marked = true;
-                initNotFinal(neighbor, notFinalStates);
+    /**
+     * Returns the state reached from {@code state} on {@code c}
+     * @param state A state of the compiled DFA
+     * @param c The next input character
+     * @return The state reached, or {@link #DEAD} if there is no transition
+     */
+    int step(int state, char c) {
+        return table[state * classCount + classMap[c >>> 8][c & 0xFF]];
+    }
+
+    private void initRegexMatch(NFA nfa, Node node) {
+        node.regexMatch = new HashSet<>();
+
+        BitSet matched = (BitSet) node.set.clone();
+        matched.and(nfa.finalStates);
+        for (int id = matched.nextSetBit(0); id >= 0; id = matched.nextSetBit(id + 1)) {
+            NFA.Node n = nfa.states[id];
+            if (n.regexMatch == null) {
+                node.regexMatch = null;
+                break;
             }
+            node.regexMatch.add(n.regexMatch);
         }
     }
 
-    // If there are two states in group which transition into different groups on the same character,
-    // then refine will separate them into separate Sets and update membership accordingly
-    // (This is done only for one character per call to refine)
-    private Collection<Set<Node>> refine(Set<Node> group, Map<Node, Set<Node>> membership) {
-        // Stores the expected transitions for group
-        Map<Character, Set<Node>> validator = new HashMap<>();
+    /**
+     * Returns true if {@code input} is matched by this DFA
+     * @param input A string to check against the regular expression(s) this DFA was constructed with
+     * @return True if {@code input} matches the regular expression represented by this DFA
+     */
+    public boolean match(String input) {
+        Compiled compiled = compiledAfterUse();
+        if (compiled != null)
+            return compiled.matches(input);
 
-        // Initialize validator using the first Node in group
-        Node first = group.iterator().next();
-        for (Character c : first.neighbors.keySet()) {
-            validator.put(c, membership.get(first.neighbors.get(c)));
+        int state = start;
+        for (int i = 0; i < input.length(); i++) {
+            state = step(state, input.charAt(i));
+            if (state == DEAD)
+                return false;
         }
 
-        char disagree = '\0';
+        return label[state] != NOT_ACCEPTING;
+    }
 
-        // Look for a Character on which a Node in group disagrees with first
-        for (Node node : group) {
-            // Compare node's transitions to first's
-            for (Character c : node.neighbors.keySet()) {
-                if (!validator.containsKey(c) ||
-                        membership.get(node.neighbors.get(c)) != validator.get(c)) {
-                    disagree = c;
-                    break;
-                }
-            }
+    /**
+     * Makes this DFA compile itself into a JVM class once it has been used {@code uses} times
+     * (by {@link #match(String)}, or to match a token for a {@link Lexer}), after which it matches with
+     * that class instead of interpreting its tables<br>
+     * The class is a hidden class (unloaded with this DFA) defined from the template {@link CompiledDFA}
+     * whose static final fields are the tables of this DFA, so that the JIT compiles a matching loop of its own for
+     * this DFA with the table references and sizes as constants (the transitions are still loaded from the tables,
+     * see {@link CompiledDFA}). If the class cannot be defined, this DFA keeps interpreting its tables
+     * @param uses The number of uses after which this DFA is compiled (0 to compile it right away)
+     * @return This DFA for fluent calls
+     */
+    public DFA compileAfter(int uses) {
+        if (uses < 0)
+            throw new IllegalArgumentException("uses must not be negative");
+
+        this.uses.set(0);
+        compileThreshold = uses;
+        if (uses == 0)
+            compiledAfterUse();
+        return this;
+    }
 
-            // And check that node is not missing transitions
-            for (Character c : validator.keySet()) {
-                if (!node.neighbors.keySet().contains(c)) {
-                    disagree = c;
-                    break;
-                }
+    // Returns the compiled matcher (or null if this DFA has not been compiled)
+    Compiled compiled() {
+        return compiled;
+    }
+
+    // Counts a use, compiling this DFA if the threshold is reached, and returns the compiled matcher (if any)
+    Compiled compiledAfterUse() {
+        Compiled compiled = this.compiled;
+        if (compiled == null && compileThreshold >= 0 && uses.incrementAndGet() >= compileThreshold) {
+            // Uses are no longer counted, even if compiling fails (compile is synchronized and only compiles once)
+            compileThreshold = -1;
+            compile();
+            compiled = this.compiled;
+        }
+        return compiled;
+    }
+
+    // The bytecode of CompiledDFA (or null if it cannot be read), read on first use by compiledTemplate
+    private static byte[] compiledTemplate;
+    private static boolean compiledTemplateRead = false;
+
+    private static synchronized byte[] compiledTemplate() {
+        if (!compiledTemplateRead) {
+            compiledTemplateRead = true;
+            try (InputStream in = DFA.class.getResourceAsStream("CompiledDFA.class")) {
+                if (in != null)
+                    compiledTemplate = in.readAllBytes();
+            } catch (IOException e) {
+                compiledTemplate = null;
             }
         }
+        return compiledTemplate;
+    }
 
-        // Map from sets reached to partition subsets of group
-        Map<Set<Node>, Set<Node>> partitioner = new HashMap<>();
+    // Compiles this DFA into a hidden class and returns true if it is then used for matching
+    synchronized boolean compile() {
+        if (compiled != null)
+            return true;
+
+        byte[] template = compiledTemplate();
+        if (template == null)
+            return false;
+
+        // States are premultiplied by classCount, i.e. state s is s * classCount so that the table is indexed by
+        // state + class, and the label of state s is at s * classCount in a (sparse) array as long as the table
+        int[] premultiplied = new int[table.length];
+        int[] premultipliedLabel = new int[table.length];
+        for (int i = 0; i < table.length; i++) {
+            premultiplied[i] = table[i] == DEAD ? DEAD : table[i] * classCount;
+        }
+        for (int state = 0; state < stateCount; state++) {
+            premultipliedLabel[state * classCount] = label[state];
+        }
 
-        // A (key) value for if a Node does not have a transition
-        final Set<Node> empty = new HashSet<>();
+        Object[] data = {start * classCount, classMap, premultiplied, premultipliedLabel};
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClassWithClassData(template, data, true);
+            compiled = (Compiled) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+            return true;
+        } catch (Throwable e) {
+            // Keep interpreting the tables
+            return false;
+        }
+    }
 
-        // If all Nodes agree, then group need not be partitioned
-        if (disagree == '\0') {
-            partitioner.put(new HashSet<>(), group);
-        } else {
-            // Assign each node to a subset of group using partitioner
-            for (Node node : group) {
-                // The set reached by node on disagree
-                Set<Node> target;
-                if (!node.neighbors.containsKey(disagree))
-                    target = empty;
-                else
-                    target = membership.get(node.neighbors.get(disagree));
+    /**
+     * The first int of a serialized DFA (the characters "RDFA")
+     */
+    static final int MAGIC = 0x52444641;
 
-                // Add node into the corresponding Set in partitioner
-                // and update membership
-                if (!partitioner.containsKey(target))
-                    partitioner.put(target, new HashSet<>());
-                partitioner.get(target).add(node);
-                membership.put(node, partitioner.get(target));
-            }
-        }
+    /**
+     * The version of the format written by {@link #writeTo(OutputStream)}, which is the second int
+     */
+    static final int FORMAT_VERSION = 1;
+
+    // The kinds of automaton that can be serialized, the third int
+    static final int KIND_DFA = 0;
+    static final int KIND_LEXER = 1;
+
+    /**
+     * Writes this DFA in a compact binary format which {@link #readFrom(ByteBuffer)} loads without rebuilding it<br>
+     * All numbers are big-endian: the header (magic number, format version and kind), the state count, class count
+     * and start state, the class map as its distinct blocks of 256 classes and the block of every high byte,
+     * the transition table, the label of every state and finally the sets of names of the labels
+     * @param out The stream to write to (which is not closed)
+     * @throws IOException If {@code out} throws an IOException
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        writeHeader(data, KIND_DFA);
+        writeAutomaton(data);
+        data.flush();
+    }
 
-        return partitioner.values();
+    static void writeHeader(DataOutputStream out, int kind) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(kind);
     }
 
-    private void clearPowerSetStates(List<Node> nodes) {
-        for (Node node : nodes) {
-            node.set = null;
+    void writeAutomaton(DataOutputStream out) throws IOException {
+        out.writeInt(stateCount);
+        out.writeInt(classCount);
+        out.writeInt(start);
+
+        // Blocks shared by several high bytes are written once
+        Map<char[], Integer> blocks = new IdentityHashMap<>();
+        List<char[]> distinct = new ArrayList<>();
+        for (char[] block : classMap) {
+            if (!blocks.containsKey(block)) {
+                blocks.put(block, distinct.size());
+                distinct.add(block);
+            }
+        }
+        out.writeInt(distinct.size());
+        for (char[] block : distinct) {
+            for (char cls : block) {
+                out.writeChar(cls);
+            }
+        }
+        for (char[] block : classMap) {
+            out.writeChar(blocks.get(block));
         }
-    }
 
-    // Returns the set of all NFA Nodes that can be reached from inSet by using empty transitions
-    private Set<NFA.Node> closure(List<NFA.Node> inSet) {
-        Set<NFA.Node> set = new HashSet<>(inSet);
-        boolean flag = true;
-        Set<NFA.Node> prevExtra = set;
+        for (int target : table) {
+            out.writeInt(target);
+        }
+        for (int id : label) {
+            out.writeInt(id);
+        }
 
-        // While new Nodes are being reached, add Nodes to the set
-        while (flag) {
-            flag = false;
-            List<NFA.Node> extra = new LinkedList<>();
-            for (NFA.Node node : prevExtra) {
-                if (node.neighbors.containsKey('\0')) {
-                    extra.addAll(node.neighbors.get('\0'));
-                    flag = true;
-                }
+        out.writeInt(labels.size());
+        for (Set<String> names : labels) {
+            if (names == null) {
+                out.writeInt(-1);
+                continue;
+            }
+            out.writeInt(names.size());
+            for (String name : names) {
+                writeString(out, name);
             }
-            set.addAll(extra);
-            prevExtra = new HashSet<>(extra);
         }
+    }
 
-        return set;
+    static void writeString(DataOutputStream out, String string) throws IOException {
+        out.writeInt(string.length());
+        out.writeChars(string);
     }
 
-    // Returns true if the intersection of finalStates and states is non-trivial
-    private boolean containsFinalState(List<NFA.Node> finalStates, Set<NFA.Node> states) {
-        for (NFA.Node node : states) {
-            if (finalStates.contains(node))
-                return true;
+    /**
+     * Loads a DFA written by {@link #writeTo(OutputStream)} from {@code buffer}, starting at its position,
+     * by copying its tables without any other processing<br>
+     * If a {@link Lexer} was written, the Lexer is loaded
+     * @param buffer A buffer containing a serialized DFA (its position is moved past it and its order is set to
+     *               big-endian)
+     * @return The DFA which was written
+     * @throws IllegalArgumentException If the buffer does not contain a valid serialized DFA of a supported version
+     */
+    public static DFA readFrom(ByteBuffer buffer) {
+        int kind = readHeader(buffer);
+        if (kind == KIND_LEXER)
+            return Lexer.readBody(buffer);
+        if (kind != KIND_DFA)
+            throw new IllegalArgumentException("Unknown kind of automaton " + kind);
+
+        DFA dfa = new DFA();
+        dfa.readAutomaton(buffer);
+        return dfa;
+    }
+
+    /**
+     * Loads a DFA written by {@link #writeTo(OutputStream)} to a file by memory-mapping the file
+     * @param path The file containing a serialized DFA
+     * @return The DFA which was written
+     * @throws IOException If the file cannot be read
+     * @throws IllegalArgumentException If the file does not contain a valid serialized DFA of a supported version
+     */
+    public static DFA readFrom(Path path) throws IOException {
+        return readFrom(map(path));
+    }
+
+    static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
         }
-        return false;
     }
 
-    // Gets the node in nodes whose set is set, or creates such a Node and adds it to nodes
-    private Node getOrCreateNode(List<Node> nodes, Set<NFA.Node> set) {
-        for (Node node : nodes) {
-            if (node.set.equals(set))
-                return node;
+    // Reads the header and returns the kind of automaton which follows it
+    static int readHeader(ByteBuffer buffer) {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (buffer.getInt() != MAGIC)
+                throw new IllegalArgumentException("Not a serialized DFA");
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION)
+                throw new IllegalArgumentException("Unsupported DFA format version " + version);
+            return buffer.getInt();
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated serialized DFA", e);
         }
-        Node node = new Node(set);
-        nodes.add(node);
-        return node;
     }
 
-    /**
-     * Returns true if {@code input} is matched by this DFA
-     * @param input A string to check against the regular expression(s) this DFA was constructed with
-     * @return True if {@code input} matches the regular expression represented by this DFA
-     */
-    public boolean match(String input) {
-        Node current = startState;
-        for (int i = 0; i < input.length(); i++) {
-            if (!current.neighbors.containsKey(input.charAt(i))) {
-                if (current.neighbors.containsKey(NFA.WILDCARD))
-                    current = current.neighbors.get(NFA.WILDCARD);
-                else
-                    return false;
-            } else
-                current = current.neighbors.get(input.charAt(i));
+    void readAutomaton(ByteBuffer buffer) {
+        try {
+            stateCount = buffer.getInt();
+            classCount = buffer.getInt();
+            start = buffer.getInt();
+            if (stateCount < 1 || classCount < 1 || start < 0 || start >= stateCount)
+                throw new IllegalArgumentException("Invalid serialized DFA");
+
+            int blockCount = buffer.getInt();
+            if (blockCount < 1 || blockCount > 256)
+                throw new IllegalArgumentException("Invalid serialized DFA");
+            // Every count is checked against what is left of the buffer before allocating anything of that size,
+            // so that a corrupt count cannot exhaust memory
+            require(buffer, 256 * (blockCount + 1), 2);
+            require(buffer, (long) stateCount * (classCount + 1), 4);
+            char[][] blocks = new char[blockCount][256];
+            for (char[] block : blocks) {
+                buffer.asCharBuffer().get(block);
+                buffer.position(buffer.position() + 2 * block.length);
+                for (char cls : block) {
+                    if (cls >= classCount)
+                        throw new IllegalArgumentException("Invalid serialized DFA");
+                }
+            }
+            classMap = new char[256][];
+            for (int high = 0; high < 256; high++) {
+                int block = buffer.getChar();
+                if (block >= blockCount)
+                    throw new IllegalArgumentException("Invalid serialized DFA");
+                classMap[high] = blocks[block];
+            }
+
+            table = new int[stateCount * classCount];
+            buffer.asIntBuffer().get(table);
+            buffer.position(buffer.position() + 4 * table.length);
+            for (int target : table) {
+                if (target < DEAD || target >= stateCount)
+                    throw new IllegalArgumentException("Invalid serialized DFA");
+            }
+
+            label = new int[stateCount];
+            buffer.asIntBuffer().get(label);
+            buffer.position(buffer.position() + 4 * label.length);
+
+            int labelCount = buffer.getInt();
+            if (labelCount < 0)
+                throw new IllegalArgumentException("Invalid serialized DFA");
+            require(buffer, labelCount, 4);
+            labels = new ArrayList<>(labelCount);
+            for (int id = 0; id < labelCount; id++) {
+                int size = buffer.getInt();
+                if (size == -1) {
+                    labels.add(null);
+                    continue;
+                }
+                if (size < 0)
+                    throw new IllegalArgumentException("Invalid serialized DFA");
+                require(buffer, size, 4);
+                Set<String> names = new HashSet<>();
+                for (int i = 0; i < size; i++) {
+                    names.add(readString(buffer));
+                }
+                labels.add(names);
+            }
+            for (int id : label) {
+                if (id < NOT_ACCEPTING || id >= labelCount)
+                    throw new IllegalArgumentException("Invalid serialized DFA");
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated serialized DFA", e);
         }
+    }
 
-        return acceptStates.contains(current);
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0)
+            throw new IllegalArgumentException("Invalid serialized DFA");
+        require(buffer, length, 2);
+        char[] chars = new char[length];
+        buffer.asCharBuffer().get(chars);
+        buffer.position(buffer.position() + 2 * chars.length);
+        return new String(chars);
+    }
+
+    // Throws if fewer than count values of the given size in bytes remain in buffer
+    static void require(ByteBuffer buffer, long count, int size) {
+        if (count > buffer.remaining() / size)
+            throw new IllegalArgumentException("Truncated serialized DFA");
     }
 
     /**
@@ -438,43 +923,46 @@ public class DFA {
      * (where eps, short for epsilon, is the label for the empty word)
      */
     public String toString() {
-        StringBuilder out = new StringBuilder("digraph G {\nahead [shape = plaintext, label = \"\"];\nahead-> a0;\n");
-        int nextName = 0;
-        Map<Node, Integer> name = new HashMap<>();
-        Queue<Node> toProcess = new LinkedList<>();
-        toProcess.add(startState);
-        name.put(startState, nextName++);
-        while(!toProcess.isEmpty()) {
-            Node currentNode = toProcess.poll();
-            for (Character c : currentNode.neighbors.keySet()) {
-                Node neighbor = currentNode.neighbors.get(c);
-                if (!name.keySet().contains(neighbor)) {
-                    name.put(neighbor, nextName++);
-                    toProcess.add(neighbor);
-                }
+        StringBuilder out = new StringBuilder("digraph G {\nahead [shape = plaintext, label = \"\"];\nahead-> a" + start + ";\n");
 
-                String label;
-                switch (c) {
-                    case NFA.WILDCARD: label = "WILDCARD"; break;
-                    case ' ': label = "SPACE"; break;
-                    case '\n': label = "NEWLINE"; break;
-                    case '\t': label = "TAB"; break;
-                    case '\f': label = "FORMFEED"; break;
-                    case '\r': label = "CARRIAGERETURN"; break;
-                    case '\\': label = "BACKSLASH"; break;
-                    default: label = Character.toString(c);
-                }
+        // The labels of the runs of consecutive characters in each class (class 0 is labeled as the wildcard)
+        List<List<String>> members = new ArrayList<>();
+        for (int cls = 0; cls < classCount; cls++) {
+            members.add(new ArrayList<>());
+        }
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            int cls = classMap[c >>> 8][c & 0xFF];
+            if (cls == 0 || (c > 0 && classMap[(c - 1) >>> 8][(c - 1) & 0xFF] == cls))
+                continue;
+
+            int last = c;
+            while (last < Character.MAX_VALUE && classMap[(last + 1) >>> 8][(last + 1) & 0xFF] == cls)
+                last++;
+            members.get(cls).add(last == c ? NFA.label((char) c) :
+                    NFA.label((char) c) + "-" + NFA.label((char) last));
+        }
+        members.get(0).add(NFA.label(NFA.WILDCARD));
 
-                out.append("a").append(name.get(currentNode))
-                        .append(" -> a").append(name.get(neighbor)).append(" [label = \"").append(label).append("\"];\n");
+        for (int state = 0; state < stateCount; state++) {
+            for (int cls = 0; cls < classCount; cls++) {
+                int neighbor = table[state * classCount + cls];
+                if (neighbor == DEAD)
+                    continue;
+
+                for (String label : members.get(cls)) {
+                    out.append("a").append(state)
+                            .append(" -> a").append(neighbor).append(" [label = \"").append(label).append("\"];\n");
+                }
             }
         }
 
-        for (Node node : acceptStates) {
-            // out += "a" + name.get(node) + " [shape = doublecircle];\n";
-            out.append("a").append(name.get(node)).append(" [shape = doublecircle");
-            if (node.regexMatch != null && !node.regexMatch.isEmpty())
-                out.append(", label = \"").append(toName(node.regexMatch)).append("\"");
+        for (int state = 0; state < stateCount; state++) {
+            if (label[state] == NOT_ACCEPTING)
+                continue;
+            Set<String> names = labels.get(label[state]);
+            out.append("a").append(state).append(" [shape = doublecircle");
+            if (names != null && !names.isEmpty())
+                out.append(", label = \"").append(toName(names)).append("\"");
             out.append("];\n");
         }
 
@@ -483,6 +971,185 @@ public class DFA {
         return out.toString();
     }
 
+    /**
+     * Returns the source code of a Java class which matches the same way as this DFA without any tables,
+     * every state being a {@code switch} over the classes of characters<br>
+     * The generated class has no dependencies and only static members: {@code match(CharSequence)},
+     * {@code longestMatch(CharSequence, int)} (the end of the longest match shifted left 32 bits plus its label,
+     * or -1 if there is none), {@code step(int, char)} and {@code label(int)}, where the start state is
+     * {@code START} and the labels of accepting states are {@code int} constants named after what they match<br>
+     * For a {@link Lexer} the labels are the token types, and the class also has {@code typeName(int)}
+     * and {@code isOmitted(int)}
+     * @param className The (possibly qualified) name of the generated class
+     * @return The source code of the generated class
+     */
+    public String toJava(String className) {
+        StringBuilder out = new StringBuilder();
+        int dot = className.lastIndexOf('.');
+        String simpleName = className.substring(dot + 1);
+
+        out.append("// Generated by DFA.toJava from a DFA with ").append(stateCount).append(" states and ")
+                .append(classCount).append(" character classes\n");
+        if (dot != -1)
+            out.append("package ").append(className, 0, dot).append(";\n");
+        out.append("\npublic final class ").append(simpleName).append(" {\n");
+
+        // Name the labels after what they match, in upper case
+        String[] labelNames = new String[labels.size()];
+        Set<String> used = new HashSet<>(List.of("START", "DEAD", "NOT_ACCEPTING"));
+        for (int id = 0; id < labels.size(); id++) {
+            String name = labels.get(id) == null ? "" : toName(labels.get(id));
+            String constant = name.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase()
+                    .replaceAll("[^A-Z0-9_]+", "_").replaceAll("^_+|_+$", "");
+            if (constant.isEmpty())
+                constant = "ACCEPT";
+            else if (!Character.isJavaIdentifierStart(constant.charAt(0)))
+                constant = "ACCEPT_" + constant;
+            String unique = constant;
+            for (int i = 2; !used.add(unique); i++) {
+                unique = constant + "_" + i;
+            }
+            labelNames[id] = unique;
+
+            out.append("    public static final int ").append(unique).append(" = ").append(id).append(";");
+            out.append(name.isEmpty() ? "\n" : " // " + name.replaceAll("[^ -~]|\\\\", "?") + "\n");
+        }
+        out.append("    public static final int NOT_ACCEPTING = ").append(NOT_ACCEPTING).append(";\n");
+        out.append("    public static final int DEAD = ").append(DEAD).append(";\n");
+        out.append("    public static final int START = ").append(start).append(";\n");
+        appendJavaMembers(out, labelNames);
+
+        out.append("\n    private ").append(simpleName).append("() {\n    }\n");
+
+        out.append("\n    public static boolean match(CharSequence input) {\n");
+        out.append("        int state = START;\n");
+        out.append("        for (int i = 0; i < input.length(); i++) {\n");
+        out.append("            state = step(state, input.charAt(i));\n");
+        out.append("            if (state == DEAD)\n");
+        out.append("                return false;\n");
+        out.append("        }\n");
+        out.append("        return label(state) != NOT_ACCEPTING;\n");
+        out.append("    }\n");
+
+        out.append("\n    public static long longestMatch(CharSequence input, int from) {\n");
+        out.append("        int state = START;\n");
+        out.append("        int end = -1;\n");
+        out.append("        int matched = NOT_ACCEPTING;\n");
+        out.append("        for (int i = from; i < input.length(); ) {\n");
+        out.append("            state = step(state, input.charAt(i));\n");
+        out.append("            if (state == DEAD)\n");
+        out.append("                break;\n");
+        out.append("            i++;\n");
+        out.append("            int label = label(state);\n");
+        out.append("            if (label != NOT_ACCEPTING) {\n");
+        out.append("                end = i;\n");
+        out.append("                matched = label;\n");
+        out.append("            }\n");
+        out.append("        }\n");
+        out.append("        return end == -1 ? -1 : (long) end << 32 | matched;\n");
+        out.append("    }\n");
+
+        out.append("\n    public static int step(int state, char c) {\n");
+        out.append("        int cls = charClass(c);\n");
+        out.append("        switch (state) {\n");
+        for (int state = 0; state < stateCount; state++) {
+            out.append("            case ").append(state).append(": return step").append(state).append("(cls);\n");
+        }
+        out.append("            default: return DEAD;\n");
+        out.append("        }\n");
+        out.append("    }\n");
+
+        out.append("\n    public static int label(int state) {\n");
+        out.append("        switch (state) {\n");
+        for (int id = 0; id < labels.size(); id++) {
+            boolean any = false;
+            for (int state = 0; state < stateCount; state++) {
+                if (label[state] == id) {
+                    out.append(any ? " " : "            ").append("case ").append(state).append(":");
+                    any = true;
+                }
+            }
+            if (any)
+                out.append(" return ").append(labelNames[id]).append(";\n");
+        }
+        out.append("            default: return NOT_ACCEPTING;\n");
+        out.append("        }\n");
+        out.append("    }\n");
+
+        appendCharClass(out);
+
+        for (int state = 0; state < stateCount; state++) {
+            // The most common target is the default case
+            Map<Integer, Integer> counts = new HashMap<>();
+            int common = DEAD;
+            for (int cls = 0; cls < classCount; cls++) {
+                int target = table[state * classCount + cls];
+                if (counts.merge(target, 1, Integer::sum) > counts.getOrDefault(common, 0))
+                    common = target;
+            }
+
+            out.append("\n    private static int step").append(state).append("(int cls) {\n");
+            out.append("        switch (cls) {\n");
+            for (int cls = 0; cls < classCount; cls++) {
+                int target = table[state * classCount + cls];
+                if (target != common)
+                    out.append("            case ").append(cls).append(": return ")
+                            .append(target == DEAD ? "DEAD" : String.valueOf(target)).append(";\n");
+            }
+            out.append("            default: return ").append(common == DEAD ? "DEAD" : String.valueOf(common))
+                    .append(";\n");
+            out.append("        }\n");
+            out.append("    }\n");
+        }
+
+        out.append("}\n");
+        return out.toString();
+    }
+
+    // Adds members to the class generated by toJava after the label constants
+    void appendJavaMembers(StringBuilder out, String[] labelNames) {
+    }
+
+    // Adds the charClass method to the class generated by toJava, where runs of characters in the same class
+    // are range checks and other characters (not in class 0) are cases of a switch
+    private void appendCharClass(StringBuilder out) {
+        out.append("\n    static int charClass(char c) {\n");
+        StringBuilder cases = new StringBuilder();
+        for (int c = 0; c <= Character.MAX_VALUE; ) {
+            int cls = classMap[c >>> 8][c & 0xFF];
+            int end = c;
+            while (end < Character.MAX_VALUE && classMap[(end + 1) >>> 8][(end + 1) & 0xFF] == cls) {
+                end++;
+            }
+
+            if (cls != 0) {
+                if (end - c >= 4) {
+                    out.append("        if (c >= ").append(c).append(" && c <= ").append(end).append(")\n");
+                    out.append("            return ").append(cls).append(";\n");
+                } else {
+                    for (int member = c; member <= end; member++) {
+                        cases.append("            case ").append(toJavaChar((char) member)).append(": return ")
+                                .append(cls).append(";\n");
+                    }
+                }
+            }
+            c = end + 1;
+        }
+        out.append("        switch (c) {\n").append(cases);
+        out.append("            default: return 0;\n");
+        out.append("        }\n");
+        out.append("    }\n");
+    }
+
+    // Returns a Java literal for c (as a number if it is not printable ASCII)
+    private static String toJavaChar(char c) {
+        if (c == '\'' || c == '\\')
+            return "'\\" + c + "'";
+        if (c >= ' ' && c <= '~')
+            return "'" + c + "'";
+        return String.valueOf((int) c);
+    }
+
     public static void main(String[] args) {
         DFA dfa = new DFA("((1|0(00)*01)((11|10(00)*01))*|(0(00)*1|(1|0(00)*01)((11|10(00)*01))*(0|10(00)*1))((1(00)*1|(0|1(00)*01)((11|10(00)*01))*(0|10(00)*1)))*(0|1(00)*01)((11|10(00)*01))*)");
         System.out.println(dfa);
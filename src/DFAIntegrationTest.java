@@ -1,5 +1,10 @@
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class DFAIntegrationTest {
@@ -95,4 +100,140 @@ class DFAIntegrationTest {
         assertTrue(dfa.match("texttext"));
         assertFalse(dfa.match("text\0text"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void alphabetPartitionTest() {
+        DFA dfa = new DFA(Lexer.LETTER + "+" + Lexer.DIGIT);
+        assertEquals(3, dfa.classCount);
+        assertTrue(dfa.match("abcXYZ0"));
+        assertTrue(dfa.match("q9"));
+        assertFalse(dfa.match("9"));
+        assertFalse(dfa.match("ab-0"));
+    }
+
+    @Test
+    public void charClassTest() {
+        // Identifiers of any letters (as ranges of all characters past ASCII) take a few classes, not thousands
+        DFA dfa = new DFA("[a-zA-Z_\u0080-\uFFFF][a-zA-Z_0-9\u0080-\uFFFF]*");
+        assertEquals(3, dfa.classCount);
+        assertEquals(2, dfa.stateCount);
+        assertTrue(dfa.match("x_1"));
+        assertTrue(dfa.match("\u00e9t\u00e9\u4e2d\u6587"));
+        assertFalse(dfa.match("1x"));
+        assertFalse(dfa.match("a-b"));
+
+        String[] regexes = {"[a-c]+x", "[^ab]*b", "\\d+(\\.\\d+)?", "\\w+\\s*[=\\-]", "[b-d]a|[^c-z]*", ".[a-b]c"};
+        Random random = new Random(0);
+        for (String regex : regexes) {
+            DFA table = new DFA(regex);
+            LazyDFA lazy = new LazyDFA(regex);
+            NFA nfa = NFA.makeNFA(regex);
+            for (int t = 0; t < 500; t++) {
+                StringBuilder input = new StringBuilder();
+                int length = random.nextInt(6);
+                for (int i = 0; i < length; i++) {
+                    input.append("abcdxz19.= -\u00e9".charAt(random.nextInt(13)));
+                }
+                String text = input.toString();
+                assertEquals(nfa.match(text), table.match(text), regex + " on " + text);
+                assertEquals(nfa.match(text), lazy.match(text), regex + " on " + text);
+            }
+        }
+    }
+
+    @Test
+    public void minimizeTest() {
+        DFA dfa = new DFA("(a|b)*abb");
+        assertEquals(4, dfa.stateCount);
+        assertTrue(dfa.match("abb"));
+        assertTrue(dfa.match("babaabb"));
+        assertFalse(dfa.match("abba"));
+
+        // Accepting states with different labels are kept apart
+        dfa = new DFA(new String[]{"A", "B"}, new String[]{"a", "b"});
+        assertEquals(3, dfa.stateCount);
+        assertTrue(dfa.match("a"));
+        assertTrue(dfa.match("b"));
+    }
+
+    @Test
+    public void emptyCycleTest() {
+        DFA dfa = new DFA("(a*)*b");
+        assertTrue(dfa.match("b"));
+        assertTrue(dfa.match("aaab"));
+        assertFalse(dfa.match("aa"));
+    }
+
+    @Test
+    public void wildcardTest() {
+        DFA dfa = new DFA(".*a");
+        assertTrue(dfa.match("a"));
+        assertTrue(dfa.match("aa"));
+        assertTrue(dfa.match("xya"));
+        assertFalse(dfa.match("ab"));
+    }
+
+    @Test
+    public void serializeTest() throws IOException {
+        DFA dfa = new DFA(".*a(a|b)" + Lexer.DIGIT);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dfa.writeTo(out);
+        DFA loaded = DFA.readFrom(ByteBuffer.wrap(out.toByteArray()));
+
+        assertEquals(dfa.toString(), loaded.toString());
+        assertTrue(loaded.match("xyzab7"));
+        assertFalse(loaded.match("xyzab"));
+
+        byte[] bytes = out.toByteArray();
+        assertThrows(IllegalArgumentException.class, () -> DFA.readFrom(ByteBuffer.wrap(bytes, 0, bytes.length - 1)));
+        bytes[0]++;
+        assertThrows(IllegalArgumentException.class, () -> DFA.readFrom(ByteBuffer.wrap(bytes)));
+    }
+
+    @Test
+    public void corruptCountTest() {
+        // A header claiming 2^28 states must be rejected without allocating the table
+        ByteBuffer header = ByteBuffer.allocate(40);
+        header.putInt(DFA.MAGIC).putInt(DFA.FORMAT_VERSION).putInt(DFA.KIND_DFA);
+        header.putInt(1 << 28).putInt(1 << 8).putInt(0).putInt(1);
+        assertThrows(IllegalArgumentException.class, () -> DFA.readFrom(header.flip()));
+
+        // As must a string claiming to be longer than the buffer
+        ByteBuffer string = ByteBuffer.allocate(8).putInt(Integer.MAX_VALUE);
+        assertThrows(IllegalArgumentException.class, () -> DFA.readString(string.flip()));
+    }
+
+    @Test
+    public void compileTest() {
+        DFA dfa = new DFA("(a|b)*a(a|b){3}" + Lexer.DIGIT);
+        dfa.compileAfter(0);
+        assertNotNull(dfa.compiled());
+        for (int i = 0; i < 1 << 8; i++) {
+            String input = Integer.toBinaryString(i).replace('0', 'a').replace('1', 'b') + i % 10;
+            assertEquals(new DFA("(a|b)*a(a|b){3}" + Lexer.DIGIT).match(input), dfa.match(input), input);
+        }
+    }
+
+    @Test
+    public void concurrentCompileAfterTest() throws InterruptedException {
+        // Uses from several threads are all counted, so the DFA is compiled exactly at the threshold
+        DFA dfa = new DFA("(a|b)*a(a|b){3}").compileAfter(4000);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 999; i++) {
+                    assertTrue(dfa.match("babba"));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(dfa.compiled());
+        for (int i = 0; i < 4; i++) {
+            assertFalse(dfa.match("bbbb"));
+        }
+        assertNotNull(dfa.compiled());
+    }
+}
@@ -0,0 +1,324 @@
+import java.util.*;
+
+/**
+ * <p>
+ * This class finds the matches of a regular expression inside a text (rather than matching the whole text),
+ * reporting leftmost-longest matches: the match which starts first, and of those the longest,
+ * then the next such match after it and so on
+ * </p>
+ *
+ * <p>
+ * Three {@link DFA}s are used: one for {@code .*} followed by the regex which finds in one pass whether the text
+ * contains any match (and where the first one ends at the earliest), one for the reversed regex preceded by
+ * {@code .*} which finds where every match starts in one backwards pass, and the DFA for the regex itself
+ * which extends each start to the longest match. So the text is scanned a constant number of times,
+ * except that each match is followed until the DFA cannot match any further
+ * </p>
+ *
+ * <p>
+ * When every match contains a literal (see {@link RegexAST#requiredFactor}) texts without it are rejected with
+ * {@link String#indexOf}, and when every match starts with a literal only the occurrences of it are tried
+ * as starts of matches (until that has cost more than scanning the text with the DFAs)
+ * </p>
+ *
+ * <p>
+ * A Finder is never modified once it is constructed, so it can be used by any number of threads at once
+ * </p>
+ *
+ * <p>
+ * For supported ways of writing regular expressions, see {@link RegexAST}
+ * </p>
+ */
+public class Finder {
+    /**
+     * This class describes a match found in a text, which is the text from {@code start()} to {@code end()}
+     */
+    public static class Match {
+        private final int start;
+        private final int end;
+
+        /**
+         * Constructs a match of the text from {@code start} (inclusive) to {@code end} (exclusive)
+         * @param start The index of the first character of the match
+         * @param end The index after the last character of the match
+         */
+        public Match(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Returns the index in the text where this match starts
+         * @return The index of the first character of this match
+         */
+        public int start() {
+            return start;
+        }
+
+        /**
+         * Returns the index in the text just past this match
+         * @return The index after the last character of this match
+         */
+        public int end() {
+            return end;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Match))
+                return false;
+            Match match = (Match) o;
+            return start == match.start && end == match.end;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * start + end;
+        }
+
+        public String toString() {
+            return "[" + start + ", " + end + ")";
+        }
+    }
+
+    // forward matches the regex, unanchored matches .* followed by the regex
+    // and reverse matches the reversed regex preceded by .* (reading the text backwards)
+    private final DFA forward;
+    private final DFA unanchored;
+    private final DFA reverse;
+
+    // Literals which every match starts with and contains (or empty Strings if not known)
+    // so that inputs and parts of inputs without them can be skipped with String.indexOf
+    private final String prefix;
+    private final String factor;
+
+    /**
+     * Constructs a Finder for the given regular expression
+     * @param regex A valid regular expression to be found
+     */
+    public Finder(String regex) {
+        this(new RegexAST(regex));
+    }
+
+    /**
+     * Constructs a Finder for the given regular expression, which skips the parts of inputs that do not contain
+     * the literals required by {@code regex} (see {@link RegexAST#requiredPrefix} and {@link RegexAST#requiredFactor})
+     * @param regex A {@link RegexAST} to be found
+     */
+    public Finder(RegexAST regex) {
+        this(NFA.makeNFA(regex), regex.requiredPrefix(), regex.requiredFactor());
+    }
+
+    /**
+     * Constructs a Finder which finds the Strings matched by the given NFA
+     * @param nfa A {@link NFA} whose matches are to be found
+     */
+    public Finder(NFA nfa) {
+        this(nfa, "", "");
+    }
+
+    private Finder(NFA nfa, String prefix, String factor) {
+        forward = new DFA(nfa);
+        unanchored = new DFA(nfa.unanchored());
+        reverse = new DFA(nfa.reverse().unanchored());
+        this.prefix = prefix;
+        this.factor = factor;
+    }
+
+    /**
+     * Returns true if any part of {@code input} is matched by the regular expression, in a single pass which stops
+     * at the end of the first match found
+     * @param input The text to search
+     * @return True if {@code input} contains a match
+     */
+    public boolean contains(CharSequence input) {
+        if (!factor.isEmpty() && indexOf(input, factor, 0) == -1)
+            return false;
+
+        int from = prefix.isEmpty() ? 0 : indexOf(input, prefix, 0);
+        return from != -1 && firstEnd(input, from) != -1;
+    }
+
+    /**
+     * Returns the leftmost-longest match in {@code input}
+     * @param input The text to search
+     * @return The match which starts first in {@code input} (and is the longest of those), or null if there is none
+     */
+    public Match find(CharSequence input) {
+        return find(input, 0);
+    }
+
+    /**
+     * Returns the leftmost-longest match in {@code input} which starts at or after {@code from}
+     * @param input The text to search
+     * @param from The index in {@code input} to search from
+     * @return The match which starts first at or after {@code from} (and is the longest of those),
+     * or null if there is none
+     */
+    public Match find(CharSequence input, int from) {
+        if (from < 0 || from > input.length())
+            throw new IndexOutOfBoundsException("from " + from + " is outside of the input");
+
+        List<Match> matches = new ArrayList<>(1);
+        find(input, from, false, matches);
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+
+    /**
+     * Returns every match in {@code input} from left to right, where each is the leftmost-longest match
+     * which starts at or after the end of the previous match (an empty match is followed by at least one character)
+     * @param input The text to search
+     * @return The matches in {@code input} in order
+     */
+    public List<Match> findAll(CharSequence input) {
+        List<Match> matches = new ArrayList<>();
+        find(input, 0, true, matches);
+        return matches;
+    }
+
+    // Adds the first match starting at or after from to matches, or every match if all is true
+    private void find(CharSequence input, int from, boolean all, List<Match> matches) {
+        if (!factor.isEmpty() && indexOf(input, factor, from) == -1)
+            return;
+
+        if (!prefix.isEmpty()) {
+            // Every match starts with prefix, so try each occurrence of prefix (where a miss is usually
+            // found after a few characters) until misses have cost more than one pass over the input
+            long budget = input.length() - from;
+            int start;
+            while ((start = indexOf(input, prefix, from)) != -1) {
+                long match = longestMatch(input, start);
+                int end = (int) match;
+                if (end != -1) {
+                    matches.add(new Match(start, end));
+                    if (!all)
+                        return;
+                    from = end;
+                    continue;
+                }
+
+                from = start + 1;
+                budget -= (match >>> 32) - start;
+                if (budget < 0)
+                    break;
+            }
+            if (start == -1)
+                return;
+        }
+
+        int firstEnd = firstEnd(input, from);
+        if (firstEnd == -1)
+            return;
+
+        if (!all) {
+            // The leftmost match starts at or before firstEnd, so only the text up to firstEnd is scanned backwards
+            // for starts of matches ending there (or before), and an earlier start can only be of a match ending
+            // after firstEnd, which is tried forwards (until misses have cost more than one pass over the input)
+            int leftmost = leftmostStart(input, from, firstEnd);
+            long budget = input.length() - from;
+            int start = from;
+            for (; start < leftmost && budget >= 0; start++) {
+                long match = longestMatch(input, start);
+                if ((int) match != -1)
+                    break;
+                budget -= (match >>> 32) - start;
+            }
+            if (budget >= 0) {
+                matches.add(new Match(start, (int) longestMatch(input, start)));
+                return;
+            }
+        }
+
+        // The last start found scanning backwards is the leftmost
+        BitSet starts = starts(input, from);
+        for (int start = starts.nextSetBit(from); start >= 0; ) {
+            int end = (int) longestMatch(input, start);
+            matches.add(new Match(start, end));
+            if (!all)
+                return;
+            start = starts.nextSetBit(end > start ? end : end + 1);
+        }
+    }
+
+    // Returns the index of the first occurrence of literal in input at or after from, or -1 if there is none
+    private static int indexOf(CharSequence input, String literal, int from) {
+        if (input instanceof String)
+            return ((String) input).indexOf(literal, from);
+
+        char first = literal.charAt(0);
+        for (int i = from; i <= input.length() - literal.length(); i++) {
+            if (input.charAt(i) != first)
+                continue;
+            int length = 1;
+            while (length < literal.length() && input.charAt(i + length) == literal.charAt(length))
+                length++;
+            if (length == literal.length())
+                return i;
+        }
+        return -1;
+    }
+
+    // Returns the earliest index at which a match in input starting at or after from ends, or -1 if there is none
+    private int firstEnd(CharSequence input, int from) {
+        int state = unanchored.start;
+        if (unanchored.label[state] != DFA.NOT_ACCEPTING)
+            return from;
+
+        for (int i = from; i < input.length(); i++) {
+            state = unanchored.step(state, input.charAt(i));
+            if (state == DFA.DEAD)
+                return -1;
+            if (unanchored.label[state] != DFA.NOT_ACCEPTING)
+                return i + 1;
+        }
+        return -1;
+    }
+
+    // Returns the lowest index at or after from where a match in input ending at or before to starts
+    // (there must be one), in a backwards pass from to
+    private int leftmostStart(CharSequence input, int from, int to) {
+        int state = reverse.start;
+        int leftmost = to;
+        for (int i = to - 1; i >= from; i--) {
+            state = reverse.step(state, input.charAt(i));
+            if (state == DFA.DEAD)
+                break;
+            if (reverse.label[state] != DFA.NOT_ACCEPTING)
+                leftmost = i;
+        }
+        return leftmost;
+    }
+
+    // Returns the set of indices at or after from where a match in input starts, in a single backwards pass
+    private BitSet starts(CharSequence input, int from) {
+        BitSet starts = new BitSet(input.length() + 1);
+        int state = reverse.start;
+        if (reverse.label[state] != DFA.NOT_ACCEPTING)
+            starts.set(input.length());
+
+        for (int i = input.length() - 1; i >= from; i--) {
+            state = reverse.step(state, input.charAt(i));
+            if (state == DFA.DEAD)
+                break;
+            if (reverse.label[state] != DFA.NOT_ACCEPTING)
+                starts.set(i);
+        }
+        return starts;
+    }
+
+    // Returns the end of the longest match in input starting at start, or -1 if there is none, in the low 32 bits
+    // and the index where the DFA stopped in the high 32 bits
+    private long longestMatch(CharSequence input, int start) {
+        int state = forward.start;
+        int end = forward.label[state] != DFA.NOT_ACCEPTING ? start : -1;
+        int i = start;
+        for (; i < input.length(); i++) {
+            state = forward.step(state, input.charAt(i));
+            if (state == DFA.DEAD)
+                break;
+            if (forward.label[state] != DFA.NOT_ACCEPTING)
+                end = i + 1;
+        }
+        return ((long) i << 32) | (end & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,93 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FinderIntegrationTest {
+    @Test
+    public void findTest() {
+        Finder finder = new Finder("ab(c|d)*");
+        assertEquals(new Finder.Match(2, 6), finder.find("xxabcdab"));
+        assertEquals(new Finder.Match(6, 8), finder.find("xxabcdab", 3));
+        assertNull(finder.find("xxabcdab", 7));
+        assertTrue(finder.contains("xxabcdab"));
+        assertFalse(finder.contains("xxacbd"));
+        assertEquals(List.of(new Finder.Match(2, 6), new Finder.Match(6, 8), new Finder.Match(9, 11)),
+                finder.findAll("xxabcdab ab"));
+        assertEquals(List.of(), finder.findAll(""));
+
+        // Empty matches are found between characters but do not repeat
+        Finder empty = new Finder("a*");
+        assertEquals(List.of(new Finder.Match(0, 2), new Finder.Match(2, 2), new Finder.Match(3, 3)),
+                empty.findAll("aab"));
+    }
+
+    @Test
+    public void randomTest() {
+        String[] regexes = {"(a|b)*a(a|b){2}", "ab|ba", "a+b?", "(ab)*", "b(a|c)*b", "ab(c|a)*", "(a|c)b*cc",
+                "aa.*b", "ab*c|b"};
+        Random random = new Random(0);
+        for (String regex : regexes) {
+            Finder finder = new Finder(regex);
+            DFA dfa = new DFA(regex);
+            for (int t = 0; t < 200; t++) {
+                StringBuilder input = new StringBuilder();
+                int length = random.nextInt(20);
+                for (int i = 0; i < length; i++) {
+                    input.append("abc".charAt(random.nextInt(3)));
+                }
+                String text = input.toString();
+                List<Finder.Match> expected = findAll(dfa, text);
+                assertEquals(expected, finder.findAll(text), regex + " in " + text);
+                assertEquals(expected.isEmpty() ? null : expected.get(0), finder.find(text), regex + " in " + text);
+                assertEquals(findAll(dfa, text), new Finder(NFA.makeNFA(regex)).findAll(new StringBuilder(text)));
+            }
+        }
+    }
+
+    @Test
+    public void findFirstTest() {
+        // The leftmost match ends after the first match to end, at 2
+        Finder finder = new Finder("ab*c|b");
+        assertEquals(new Finder.Match(0, 5), finder.find("abbbc"));
+        assertEquals(new Finder.Match(1, 2), finder.find("abbbc", 1));
+        assertEquals(new Finder.Match(0, 2), new Finder("a|b*").find("bb"));
+    }
+
+    @Test
+    public void prefilterTest() {
+        // Skips to each "ERROR" and falls back to the reverse pass after too many misses
+        Finder finder = new Finder("ERROR: (a|b)+");
+        String misses = "ERROR ".repeat(100);
+        String input = "x ERROR: ab ERROR: b " + misses + "ERROR: ba";
+        assertEquals(List.of(new Finder.Match(2, 11), new Finder.Match(12, 20),
+                new Finder.Match(input.length() - 9, input.length())), finder.findAll(input));
+        assertEquals(new Finder.Match(12, 20), finder.find(input, 3));
+        assertTrue(finder.contains(new StringBuilder(input)));
+        assertFalse(finder.contains(misses));
+        assertNull(finder.find(misses));
+    }
+
+    // Returns the leftmost-longest non-overlapping matches of dfa in input by trying every substring
+    private static List<Finder.Match> findAll(DFA dfa, String input) {
+        List<Finder.Match> matches = new ArrayList<>();
+        int pos = 0;
+        while (pos <= input.length()) {
+            Finder.Match match = null;
+            for (int start = pos; start <= input.length() && match == null; start++) {
+                for (int end = input.length(); end >= start; end--) {
+                    if (dfa.match(input.substring(start, end))) {
+                        match = new Finder.Match(start, end);
+                        break;
+                    }
+                }
+            }
+            if (match == null)
+                break;
+            matches.add(match);
+            pos = match.end() > match.start() ? match.end() : match.end() + 1;
+        }
+        return matches;
+    }
+}
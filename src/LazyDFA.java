@@ -0,0 +1,218 @@
+import java.util.*;
+
+/**
+ * <p>
+ * This class describes a Deterministic Finite Automaton which is constructed lazily from a {@link NFA},
+ * i.e. a state is only created once matching reaches it, and is then cached for the rest of that match and later ones
+ * </p>
+ *
+ * <p>
+ * The cache holds a bounded number of states and is flushed when it is full,
+ * if it fills up so quickly that states are rarely reused then matching falls back to simulating the NFA directly.
+ * This gives close to {@link DFA} throughput while only paying for the states the input actually reaches,
+ * and memory stays bounded for regular expressions whose full DFA would be huge
+ * </p>
+ *
+ * <p>
+ * A LazyDFA is not thread-safe since matching updates its cache
+ * </p>
+ *
+ * <p>
+ * For supported ways of writing regular expressions, see {@link RegexAST}
+ * </p>
+ */
+public class LazyDFA {
+    /**
+     * The number of states cached by default
+     */
+    public static final int DEFAULT_MAX_STATES = 10000;
+
+    // When the cache is flushed after fewer than this many characters per cached state, fall back to the NFA
+    private static final int MIN_CHARS_PER_STATE = 10;
+
+    // The value in table for a transition which has not been computed yet
+    private static final int UNKNOWN = -2;
+
+    // The number of states there is initially room for in sets, accepting and table, which double as needed
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final NFA nfa;
+    private final int maxStates;
+
+    // Characters are partitioned into classes which every transition of nfa treats the same way (see NFA.partition)
+    private final int classCount;
+    private final char[][] classMap;
+    private final char[] classOfChar;
+
+    // The cached states where state i represents the set of NFA Nodes sets[i]
+    private final Map<BitSet, Integer> cache = new HashMap<>();
+    private BitSet[] sets;
+    private boolean[] accepting;
+    // table[state * classCount + class] is the state reached, DFA.DEAD or UNKNOWN
+    private int[] table;
+    private int stateCount = 0;
+
+    private final BitSet startSet;
+
+    // The number of characters matched since the last flush
+    private long charsSinceFlush = 0;
+    // The number of times the cache has been flushed
+    int flushes = 0;
+
+    /**
+     * Constructs a lazy DFA that matches the given regular expression
+     * @param regex A valid regular expression to be matched
+     */
+    public LazyDFA(String regex) {
+        this(NFA.makeNFA(regex));
+    }
+
+    /**
+     * Constructs a lazy DFA that is equivalent to the given NFA
+     * @param nfa A {@link NFA} to be matched
+     */
+    public LazyDFA(NFA nfa) {
+        this(nfa, DEFAULT_MAX_STATES);
+    }
+
+    /**
+     * Constructs a lazy DFA that is equivalent to the given NFA and caches at most {@code maxStates} states
+     * @param nfa A {@link NFA} to be matched
+     * @param maxStates The maximum number of states to cache (at least 2)
+     */
+    public LazyDFA(NFA nfa, int maxStates) {
+        if (maxStates < 2)
+            throw new IllegalArgumentException("maxStates must be at least 2");
+
+        nfa.number();
+        this.nfa = nfa;
+        this.maxStates = maxStates;
+
+        classOfChar = nfa.partition();
+        int count = 1;
+        for (char cls : classOfChar) {
+            count = Math.max(count, cls + 1);
+        }
+        classCount = count;
+        classMap = DFA.toClassMap(classOfChar);
+
+        // Room for all maxStates states is only made once that many are cached
+        int capacity = Math.min(maxStates, INITIAL_CAPACITY);
+        sets = new BitSet[capacity];
+        accepting = new boolean[capacity];
+        table = new int[Math.multiplyExact(capacity, classCount)];
+
+        startSet = new BitSet();
+        nfa.addClosure(nfa.startState.id, startSet);
+    }
+
+    /**
+     * Returns true if {@code input} is matched by this DFA
+     * @param input A string to check against the regular expression this DFA was constructed with
+     * @return True if {@code input} matches the regular expression represented by this DFA
+     */
+    public boolean match(CharSequence input) {
+        Integer cached = cache.get(startSet);
+        if (cached == null) {
+            if (stateCount == maxStates) {
+                charsSinceFlush = 0;
+                flush();
+            }
+            cached = addState(startSet);
+        }
+
+        int state = cached;
+        // Characters matched since the last flush are charsSinceFlush + i
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            int cls = classMap[c >>> 8][c & 0xFF];
+            int next = table[state * classCount + cls];
+
+            if (next == UNKNOWN) {
+                BitSet target = transition(sets[state], cls);
+                if (target.isEmpty()) {
+                    next = DFA.DEAD;
+                } else {
+                    cached = cache.get(target);
+                    if (cached != null) {
+                        next = cached;
+                    } else if (stateCount < maxStates) {
+                        next = addState(target);
+                    } else {
+                        // The cache is full, if states are not being reused then simulate the NFA instead
+                        if (charsSinceFlush + i < (long) MIN_CHARS_PER_STATE * maxStates) {
+                            charsSinceFlush += i;
+                            return simulate(input, i + 1, target);
+                        }
+
+                        charsSinceFlush = -i;
+                        flush();
+                        state = addState(target);
+                        continue;
+                    }
+                }
+                table[state * classCount + cls] = next;
+            }
+
+            if (next == DFA.DEAD) {
+                charsSinceFlush += i;
+                return false;
+            }
+            state = next;
+        }
+
+        charsSinceFlush += input.length();
+        return accepting[state];
+    }
+
+    // Returns the set of NFA Nodes reachable from those in set on a character of class cls
+    private BitSet transition(BitSet set, int cls) {
+        BitSet target = new BitSet();
+        for (int id = set.nextSetBit(0); id >= 0; id = set.nextSetBit(id + 1)) {
+            for (int k = 0; k < nfa.edgeFirst[id].length; k++) {
+                char first = nfa.edgeFirst[id][k];
+                char last = nfa.edgeLast[id][k];
+                // A wildcard transition is on every class, any other on the classes of its first to last characters
+                if ((first == Character.MIN_VALUE && last == Character.MAX_VALUE) ||
+                        (cls != 0 && classOfChar[first] <= cls && cls <= classOfChar[last]))
+                    nfa.addClosure(nfa.edgeTargets[id][k], target);
+            }
+        }
+        return target;
+    }
+
+    // Adds a state for set to the cache (which must not be full) and returns it
+    private int addState(BitSet set) {
+        if (stateCount == sets.length) {
+            int capacity = (int) Math.min(maxStates, 2L * sets.length);
+            sets = Arrays.copyOf(sets, capacity);
+            accepting = Arrays.copyOf(accepting, capacity);
+            table = Arrays.copyOf(table, Math.multiplyExact(capacity, classCount));
+        }
+
+        int state = stateCount++;
+        sets[state] = set;
+        accepting[state] = set.intersects(nfa.finalStates);
+        Arrays.fill(table, state * classCount, (state + 1) * classCount, UNKNOWN);
+        cache.put(set, state);
+        return state;
+    }
+
+    // Empties the cache
+    private void flush() {
+        cache.clear();
+        Arrays.fill(sets, 0, stateCount, null);
+        stateCount = 0;
+        flushes++;
+    }
+
+    // Finishes matching input from index from by simulating the NFA starting with the Nodes in set
+    private boolean simulate(CharSequence input, int from, BitSet set) {
+        int size = nfa.states.length;
+        NFA.SparseSet current = new NFA.SparseSet(size);
+        for (int id = set.nextSetBit(0); id >= 0; id = set.nextSetBit(id + 1)) {
+            current.add(id);
+        }
+        return nfa.match(input, from, current, new NFA.SparseSet(size), new int[size]);
+    }
+}
@@ -0,0 +1,58 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LazyDFAIntegrationTest {
+    @Test
+    public void matchTest() {
+        LazyDFA dfa = new LazyDFA("(a|b)+ab*");
+        assertTrue(dfa.match("aab"));
+        assertTrue(dfa.match("bbabbb"));
+        assertFalse(dfa.match("ab"));
+        assertFalse(dfa.match(""));
+        assertFalse(dfa.match("abc"));
+
+        dfa = new LazyDFA(".*a");
+        assertTrue(dfa.match("xya"));
+        assertFalse(dfa.match("ab"));
+    }
+
+    @Test
+    public void agreesWithDFATest() {
+        String regex = "(a|b)*a(a|b){3}";
+        LazyDFA lazy = new LazyDFA(regex);
+        DFA dfa = new DFA(regex);
+        for (int i = 0; i < 1 << 8; i++) {
+            String input = Integer.toBinaryString(i).replace('0', 'a').replace('1', 'b');
+            assertEquals(dfa.match(input), lazy.match(input), input);
+        }
+    }
+
+    @Test
+    public void boundedCacheTest() {
+        // Only a few of the over a million states of the full DFA fit in the cache
+        String regex = "(a|b)*a(a|b){20}";
+        LazyDFA lazy = new LazyDFA(NFA.makeNFA(regex), 4);
+        NFA nfa = NFA.makeNFA(regex);
+        String[] inputs = {"bbba" + "b".repeat(20), "bbbb" + "a".repeat(19), "ab".repeat(30), "a".repeat(40)};
+        for (int i = 0; i < 10; i++) {
+            for (String input : inputs) {
+                assertEquals(nfa.match(input), lazy.match(input), input);
+            }
+        }
+        assertTrue(lazy.flushes > 0);
+    }
+
+    @Test
+    public void growingCacheTest() {
+        // Room for the states is only made as they are cached, however many may be
+        String regex = "(a|b)*a(a|b){6}";
+        LazyDFA lazy = new LazyDFA(NFA.makeNFA(regex), Integer.MAX_VALUE);
+        DFA dfa = new DFA(regex);
+        for (int i = 0; i < 1 << 9; i++) {
+            String input = Integer.toBinaryString(i).replace('0', 'a').replace('1', 'b');
+            assertEquals(dfa.match(input), lazy.match(input), input);
+        }
+        assertEquals(0, lazy.flushes);
+    }
+}
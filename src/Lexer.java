@@ -1,3 +1,10 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
 
 /**
@@ -7,34 +14,41 @@ import java.util.*;
  * </p>
  *
  * <p>
+ * The automaton of a Lexer is never modified once it is constructed, so one Lexer can be shared by any number of
+ * threads, each tokenizing its own input with a {@link Cursor} from {@link #cursor(String)}.
+ * The methods of the Lexer itself which read an input ({@link #init(String)}, {@link #next()}, ...)
+ * use a single cursor of its own and are not thread-safe
+ * </p>
+ *
+ * <p>
  * For supported ways of writing regular expressions, see {@link RegexAST}
  * </p>
  */
-public class Lexer extends DFA { // TODO: Add Unit tests
+public class Lexer extends DFA {
     /**
      * Matches a single digit, i.e. [0-9]
      */
-    public static final String DIGIT = "(0|1|2|3|4|5|6|7|8|9)";
+    public static final String DIGIT = "[0-9]";
 
     /**
      * Matches a single lowercase letter, i.e. [a-z]
      */
-    public static final String LOWER_CASE = "(a|b|c|d|e|f|g|h|i|j|k|l|m|n|o|p|q|r|s|t|u|v|w|x|y|z)";
+    public static final String LOWER_CASE = "[a-z]";
 
     /**
      * Matches a single uppercase letter, i.e. [A-Z]
      */
-    public static final String UPPER_CASE = "(A|B|C|D|E|F|G|H|I|J|K|L|M|N|O|P|Q|R|S|T|U|V|W|X|Y|Z)";
+    public static final String UPPER_CASE = "[A-Z]";
 
     /**
-     * Matches a single uppercase or lowercase letter, i.e. [a-z]|[A-Z]
+     * Matches a single uppercase or lowercase letter, i.e. [a-zA-Z]
      */
-    public static final String LETTER = "(" + LOWER_CASE + "|" + UPPER_CASE + ")";
+    public static final String LETTER = "[a-zA-Z]";
 
     /**
      * Matches a single whitespace character
      */
-    public static final String SINGLE_WHITESPACE = "( |\t|\n|\f|\r)";
+    public static final String SINGLE_WHITESPACE = "[ \t\n\f\r]";
 
     /**
      * Matches any number of consecutive whitespace characters
@@ -69,6 +83,407 @@ public class Lexer extends DFA { // TODO: Add Unit tests
         }
     }
 
+    /**
+     * This class stores matched tokens in columns of primitive arrays (which grow as needed),
+     * where token {@code i} is the input from {@code start(i)} to {@code end(i)} and has type {@code type(i)}
+     * (see {@link Lexer#typeName(int)}), so that many tokens can be stored and iterated over without objects
+     */
+    public static class TokenBuffer {
+        private int[] starts;
+        private int[] ends;
+        private int[] types;
+        private int size = 0;
+
+        /**
+         * Constructs an empty TokenBuffer
+         */
+        public TokenBuffer() {
+            this(64);
+        }
+
+        /**
+         * Constructs an empty TokenBuffer with room for {@code capacity} tokens before it needs to grow
+         * @param capacity The initial number of tokens that fit in this buffer
+         */
+        public TokenBuffer(int capacity) {
+            starts = new int[Math.max(capacity, 1)];
+            ends = new int[starts.length];
+            types = new int[starts.length];
+        }
+
+        void add(int start, int end, int type) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * size);
+                ends = Arrays.copyOf(ends, 2 * size);
+                types = Arrays.copyOf(types, 2 * size);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            types[size] = type;
+            size++;
+        }
+
+        /**
+         * Returns the number of tokens in this buffer
+         * @return The number of tokens in this buffer
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the index in the input where token {@code i} starts
+         * @param i The index of a token in this buffer
+         * @return The index of the first character of token {@code i}
+         */
+        public int start(int i) {
+            return starts[i];
+        }
+
+        /**
+         * Returns the index in the input just past token {@code i}
+         * @param i The index of a token in this buffer
+         * @return The index after the last character of token {@code i}
+         */
+        public int end(int i) {
+            return ends[i];
+        }
+
+        /**
+         * Returns the type of token {@code i}
+         * @param i The index of a token in this buffer
+         * @return The type of token {@code i}, see {@link Lexer#typeName(int)}
+         */
+        public int type(int i) {
+            return types[i];
+        }
+
+        /**
+         * Empties this buffer so that it can be reused (keeping its capacity)
+         */
+        public void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * This class tokenizes one input String with a {@link Lexer}, see {@link Lexer#cursor(String)}<br>
+     * A cursor holds all of the state of a single tokenization (its position in the input, the last match, ...)
+     * while the Lexer is only read, so a cursor is cheap to create and must not be shared between threads
+     * but any number of cursors can use the same Lexer at once
+     */
+    public static class Cursor {
+        private final Lexer lexer;
+        private final String input;
+        private int index = 0;
+
+        // The last match is input.substring(tokenStart, tokenEnd) and lastType is its token type
+        // (or NOT_ACCEPTING if there is no last match)
+        private int tokenStart;
+        private int tokenEnd;
+        private int lastType = NOT_ACCEPTING;
+        // True iff the last match has been found by hasNext or hasNextMatch but not yet returned
+        private boolean lookahead = false;
+
+        private Cursor(Lexer lexer, String input) {
+            this.lexer = lexer;
+            this.input = input;
+        }
+
+        /**
+         * Resets this cursor to the beginning of its input String
+         * @return This cursor for fluent calls
+         */
+        public Cursor reset() {
+            index = 0;
+            lookahead = false;
+            lastType = NOT_ACCEPTING;
+
+            return this;
+        }
+
+        /**
+         * Returns the label of the last token matched
+         * @return The label of the last token matched (filtered for priority if applicable)
+         */
+        public String lastMatchType() {
+            return lastType == NOT_ACCEPTING ? null : lexer.typeNames[lastType];
+        }
+
+        /**
+         * Moves to the next token matched and not skipped, whose position and type are then given by
+         * {@link #start()}, {@link #end()} and {@link #tokenType()}<br>
+         * Unlike {@link #next()} and {@link #nextToken()}, this allocates nothing
+         * @return True if there was a next token, false if the rest of the input cannot be matched
+         */
+        public boolean advance() {
+            if (!hasNext())
+                return false;
+
+            lookahead = false;
+            return true;
+        }
+
+        /**
+         * Returns the index in the input String where the last token matched starts
+         * @return The index of the first character of the last token matched
+         */
+        public int start() {
+            return tokenStart;
+        }
+
+        /**
+         * Returns the index in the input String just past the last token matched
+         * @return The index after the last character of the last token matched
+         */
+        public int end() {
+            return tokenEnd;
+        }
+
+        /**
+         * Returns the type of the last token matched as a number, see {@link Lexer#typeName(int)} for its name
+         * @return The type of the last token matched, between 0 and {@link Lexer#typeCount()} - 1
+         */
+        public int tokenType() {
+            return lastType;
+        }
+
+        /**
+         * Returns the next token matched and not skipped
+         * @return The next token matched and not skipped in the input String
+         */
+        public Token nextToken() {
+            return new Token(next(), lastMatchType());
+        }
+
+        /**
+         * Returns the next String matched and not skipped
+         * @return The next String matched and not skipped in the input String
+         */
+        public String next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            lookahead = false;
+            return input.substring(tokenStart, tokenEnd);
+        }
+
+        /**
+         * Returns the next token matched
+         * @return The next token matched in the input String (possibly an omitted type)
+         */
+        public Token nextMatchedToken() {
+            return new Token(nextMatch(), lastMatchType());
+        }
+
+        /**
+         * Returns the next String matched
+         * @return The next String matched in the input String (possibly an omitted type)
+         */
+        public String nextMatch() {
+            if (!hasNextMatch())
+                throw new NoSuchElementException();
+
+            lookahead = false;
+            return input.substring(tokenStart, tokenEnd);
+        }
+
+        // Finds the longest match at index, and if there is one consumes it (and returns MATCHED)
+        private int match() {
+            if (index == input.length()) {
+                lastType = NOT_ACCEPTING;
+                return END_OF_INPUT;
+            }
+
+            long match = lexer.longestMatch(input, index);
+            if (match == -1) {
+                lastType = NOT_ACCEPTING;
+                return UNMATCHED;
+            }
+
+            tokenStart = index;
+            tokenEnd = (int) (match >>> 32);
+            lastType = (int) match;
+            index = tokenEnd;
+            return MATCHED;
+        }
+
+        /**
+         * Returns true if the input has a next match
+         * @return True if the input String has any more non-omitted tokens to be matched
+         */
+        public boolean hasNext() {
+            // A lookahead found by hasNextMatch may be a skipped token
+            if (lookahead && !lexer.typeOmitted[lastType])
+                return true;
+
+            lookahead = false;
+            while (match() == MATCHED) {
+                if (!lexer.typeOmitted[lastType]) {
+                    lookahead = true;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns true if the input String has any tokens left
+         * @return True if the input String has any tokens left to be matched (includes tokens to be skipped)
+         */
+        public boolean hasNextMatch() {
+            if (!lookahead)
+                lookahead = match() == MATCHED;
+            return lookahead;
+        }
+
+        /**
+         * Returns the remaining unread substring
+         * @return The rest of the input that can be matched as an array of {@link Token}s<br>
+         * The unmatched portion of the input is added as the last Token whose type is "UNMATCHED by Lexer"
+         */
+        public Token[] tokenize() {
+            List<Token> tokens = new ArrayList<>();
+            while (advance()) {
+                tokens.add(new Token(input.substring(tokenStart, tokenEnd), lexer.typeNames[lastType]));
+            }
+            String rest = remaining();
+            if (!rest.isEmpty())
+                tokens.add(new Token(rest, "UNMATCHED by Lexer"));
+            Token[] finalTokens = new Token[tokens.size()];
+            tokens.toArray(finalTokens);
+            return finalTokens;
+        }
+
+        /**
+         * Matches the rest of the input, adding every token matched and not skipped to {@code tokens}
+         * @param tokens The buffer to add the matched tokens to
+         * @return The index in the input String where matching stopped,
+         * i.e. the length of the input unless some of it could not be matched
+         */
+        public int tokenizeInto(TokenBuffer tokens) {
+            while (advance()) {
+                tokens.add(tokenStart, tokenEnd, lastType);
+            }
+            return index;
+        }
+
+        /**
+         * Matches the rest of the input in parallel, returning the same tokens as {@link #tokenize()},
+         * see {@link Lexer#tokenizeParallel()}
+         * @return The rest of the input that can be matched as an array of {@link Token}s<br>
+         * The unmatched portion of the input is added as the last Token whose type is "UNMATCHED by Lexer"
+         */
+        public Token[] tokenizeParallel() {
+            TokenBuffer buffer = new TokenBuffer();
+            tokenizeParallelInto(buffer);
+
+            Token[] tokens = new Token[buffer.size() + (index < input.length() ? 1 : 0)];
+            for (int i = 0; i < buffer.size(); i++) {
+                tokens[i] = new Token(input.substring(buffer.start(i), buffer.end(i)), lexer.typeNames[buffer.type(i)]);
+            }
+            if (index < input.length())
+                tokens[buffer.size()] = new Token(remaining(), "UNMATCHED by Lexer");
+            return tokens;
+        }
+
+        /**
+         * Matches the rest of the input in parallel as in {@link #tokenizeParallel()},
+         * adding every token matched and not skipped to {@code tokens} as in {@link #tokenizeInto(TokenBuffer)}
+         * @param tokens The buffer to add the matched tokens to
+         * @return The index in the input String where matching stopped,
+         * i.e. the length of the input unless some of it could not be matched
+         */
+        public int tokenizeParallelInto(TokenBuffer tokens) {
+            // Matching in chunks only pays off if they are actually matched in parallel
+            int processors = Runtime.getRuntime().availableProcessors();
+            if (processors == 1)
+                return tokenizeParallelInto(tokens, 1);
+            return tokenizeParallelInto(tokens, Math.min(4 * processors, (input.length() - index) / MIN_CHUNK_SIZE));
+        }
+
+        // Splits the rest of the input into the given number of chunks, see tokenizeParallelInto(TokenBuffer)
+        int tokenizeParallelInto(TokenBuffer tokens, int chunkCount) {
+            if (lookahead) {
+                lookahead = false;
+                if (!lexer.typeOmitted[lastType])
+                    tokens.add(tokenStart, tokenEnd, lastType);
+            }
+
+            if (chunkCount < 2)
+                return tokenizeInto(tokens);
+
+            // Choose where the chunks start, moving each to just after a newline if there is one nearby
+            int length = input.length() - index;
+            int[] starts = new int[chunkCount + 1];
+            starts[0] = index;
+            starts[chunkCount] = input.length();
+            for (int i = 1; i < chunkCount; i++) {
+                int split = index + (int) ((long) length * i / chunkCount);
+                int newline = input.indexOf('\n', split);
+                if (newline != -1 && newline < index + (int) ((long) length * (i + 1) / chunkCount))
+                    split = newline + 1;
+                starts[i] = Math.max(split, starts[i - 1]);
+            }
+
+            Chunk[] chunks = java.util.stream.IntStream.range(0, chunkCount).parallel()
+                    .mapToObj(i -> lexer.matchChunk(input, starts[i], starts[i + 1]))
+                    .toArray(Chunk[]::new);
+
+            // Stitch the chunks together, where position is the end of the last (true) match
+            int position = index;
+            for (Chunk chunk : chunks) {
+                // Skip chunks covered entirely by a token which started in an earlier chunk
+                if (position > chunk.end)
+                    continue;
+
+                // Match from position until reaching a match found by the chunk (it matches the same from there on)
+                int first;
+                while ((first = Arrays.binarySearch(chunk.matches.starts, 0, chunk.matches.size(), position)) < 0
+                        && position < chunk.end) {
+                    long match = lexer.longestMatch(input, position);
+                    if (match == -1)
+                        return stop(position);
+
+                    int end = (int) (match >>> 32);
+                    if (!lexer.typeOmitted[(int) match])
+                        tokens.add(position, end, (int) match);
+                    position = end;
+                }
+
+                if (first >= 0) {
+                    for (int i = first; i < chunk.matches.size(); i++) {
+                        if (!lexer.typeOmitted[chunk.matches.type(i)])
+                            tokens.add(chunk.matches.start(i), chunk.matches.end(i), chunk.matches.type(i));
+                    }
+                    position = chunk.end;
+                }
+
+                if (position == chunk.end && chunk.stuck)
+                    return stop(position);
+            }
+
+            return stop(position);
+        }
+
+        // Moves this cursor to position after matching in parallel and returns position
+        private int stop(int position) {
+            index = position;
+            lastType = NOT_ACCEPTING;
+            return position;
+        }
+
+        /**
+         * Returns the remaining unseen portion of the input String <br>
+         * Note that a call to {@code hasNext} or {@code hasNextMatch} will cause this method to be missing
+         * the next token because that part of the input String has been seen
+         * @return The remaining unseen portion of the input String.
+         */
+        public String remaining() {
+            return input.substring(index);
+        }
+    }
+
     /**
      * Constructs a Lexer with the given regular expressions and their names
      * @param names An array of the labels where {@code names[i]} corresponds to {@code tokenRegex[i]}
@@ -78,6 +493,7 @@ public class Lexer extends DFA { // TODO: Add Unit tests
         super(names, tokenRegex);
         this.omitNames = new ArrayList<>();
         this.priority = null;
+        initTypes();
     }
 
     /**
@@ -90,6 +506,7 @@ public class Lexer extends DFA { // TODO: Add Unit tests
         super(names, tokenRegex);
         this.omitNames = List.of(omitNames);
         this.priority = null;
+        initTypes();
     }
 
     /**
@@ -104,6 +521,7 @@ public class Lexer extends DFA { // TODO: Add Unit tests
         super(names, tokenRegex);
         this.omitNames = new ArrayList<>();
         this.priority = priority;
+        initTypes();
     }
 
     /**
@@ -120,15 +538,172 @@ public class Lexer extends DFA { // TODO: Add Unit tests
         super(names, tokenRegex);
         this.omitNames = List.of(omitNames);
         this.priority = priority;
+        initTypes();
+    }
+
+    // Constructs an empty Lexer to be filled in by readBody
+    private Lexer() {
+        this.omitNames = new ArrayList<>();
+        this.priority = null;
     }
 
-    private int index;
-    private String input;
-    private String nextToken;
     private List<String> omitNames;
-    private Set<String> lastMatchNames;
     private Map<String, Integer> priority;
 
+    // The cursor used by init, next, etc.
+    private Cursor cursor;
+
+    // The label of an accepting state is the type of the tokens it matches, where typeNames[type] is the name of
+    // a token type and typeOmitted[type] is true iff tokens of that type are skipped
+    private String[] typeNames;
+    private boolean[] typeOmitted;
+
+    // Resolves the type (using priority) of the tokens matched by each accepting state, and whether they are omitted,
+    // then relabels the accepting states with their types so that the types need not be resolved while matching
+    private void initTypes() {
+        Map<List<Object>, Integer> typeIds = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        List<Boolean> omitted = new ArrayList<>();
+        int[] labelType = new int[labels.size()];
+        for (int id = 0; id < labels.size(); id++) {
+            Set<String> matched = labels.get(id);
+            String name = DFA.toName(priority != null ? highestPriority(matched) : matched);
+            boolean omit = false;
+            for (String n : matched) {
+                if (omitNames.contains(n))
+                    omit = true;
+            }
+
+            final boolean isOmitted = omit;
+            labelType[id] = typeIds.computeIfAbsent(List.of(name, isOmitted), key -> {
+                names.add(name);
+                omitted.add(isOmitted);
+                return names.size() - 1;
+            });
+        }
+
+        typeNames = names.toArray(new String[0]);
+        typeOmitted = new boolean[typeNames.length];
+        List<Set<String>> newLabels = new ArrayList<>();
+        for (int type = 0; type < typeNames.length; type++) {
+            typeOmitted[type] = omitted.get(type);
+            newLabels.add(Set.of(typeNames[type]));
+        }
+
+        int[] newLabel = new int[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            newLabel[state] = label[state] == NOT_ACCEPTING ? NOT_ACCEPTING : labelType[label[state]];
+        }
+        relabel(newLabel, newLabels);
+    }
+
+    /**
+     * Writes this Lexer in a compact binary format which {@link #readFrom(ByteBuffer)} loads without rebuilding it<br>
+     * The format is that of {@link DFA#writeTo(OutputStream)} (whose labels are the names of the token types)
+     * followed by the number of token types and whether each type is omitted, priorities having already been
+     * resolved into the token types
+     * @param out The stream to write to (which is not closed)
+     * @throws IOException If {@code out} throws an IOException
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        writeHeader(data, KIND_LEXER);
+        writeAutomaton(data);
+        data.writeInt(typeNames.length);
+        for (int type = 0; type < typeNames.length; type++) {
+            writeString(data, typeNames[type]);
+            data.writeBoolean(typeOmitted[type]);
+        }
+        data.flush();
+    }
+
+    /**
+     * Loads a Lexer written by {@link #writeTo(OutputStream)} from {@code buffer}, starting at its position,
+     * by copying its tables without any other processing
+     * @param buffer A buffer containing a serialized Lexer (its position is moved past it and its order is set to
+     *               big-endian)
+     * @return The Lexer which was written
+     * @throws IllegalArgumentException If the buffer does not contain a valid serialized Lexer of a supported version
+     */
+    public static Lexer readFrom(ByteBuffer buffer) {
+        int kind = readHeader(buffer);
+        if (kind != KIND_LEXER)
+            throw new IllegalArgumentException("Not a serialized Lexer");
+        return readBody(buffer);
+    }
+
+    /**
+     * Loads a Lexer written by {@link #writeTo(OutputStream)} to a file by memory-mapping the file
+     * @param path The file containing a serialized Lexer
+     * @return The Lexer which was written
+     * @throws IOException If the file cannot be read
+     * @throws IllegalArgumentException If the file does not contain a valid serialized Lexer of a supported version
+     */
+    public static Lexer readFrom(Path path) throws IOException {
+        return readFrom(map(path));
+    }
+
+    // Reads what follows the header of a serialized Lexer
+    static Lexer readBody(ByteBuffer buffer) {
+        Lexer lexer = new Lexer();
+        lexer.readAutomaton(buffer);
+        try {
+            int typeCount = buffer.getInt();
+            if (typeCount != lexer.labels.size())
+                throw new IllegalArgumentException("Invalid serialized Lexer");
+            lexer.typeNames = new String[typeCount];
+            lexer.typeOmitted = new boolean[typeCount];
+            for (int type = 0; type < typeCount; type++) {
+                lexer.typeNames[type] = readString(buffer);
+                lexer.typeOmitted[type] = buffer.get() != 0;
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated serialized Lexer", e);
+        }
+        return lexer;
+    }
+
+    // The class generated by toJava also has the name of every token type and whether tokens of a type are skipped
+    @Override
+    void appendJavaMembers(StringBuilder out, String[] labelNames) {
+        out.append("\n    private static final String[] TYPE_NAMES = {");
+        for (int type = 0; type < typeNames.length; type++) {
+            out.append(type == 0 ? "" : ", ").append('"');
+            for (char c : typeNames[type].toCharArray()) {
+                if (c == '"' || c == '\\')
+                    out.append('\\').append(c);
+                else if (c < ' ')
+                    out.append(String.format("\\%03o", (int) c));
+                else if (c > '~')
+                    out.append(String.format("\\u%04x", (int) c));
+                else
+                    out.append(c);
+            }
+            out.append('"');
+        }
+        out.append("};\n");
+
+        out.append("\n    public static String typeName(int type) {\n");
+        out.append("        return TYPE_NAMES[type];\n");
+        out.append("    }\n");
+
+        out.append("\n    public static boolean isOmitted(int type) {\n");
+        out.append("        switch (type) {\n");
+        boolean any = false;
+        for (int type = 0; type < typeNames.length; type++) {
+            if (typeOmitted[type]) {
+                out.append(any ? " " : "            ").append("case ").append(labelNames[type]).append(":");
+                any = true;
+            }
+        }
+        if (any)
+            out.append(" return true;\n");
+        out.append("            default: return false;\n");
+        out.append("        }\n");
+        out.append("    }\n");
+    }
+
     /**
      * Initializes the Lexer with a String to tokenize
      * Every call resets the Lexer to read from the beginning of the input
@@ -136,9 +711,7 @@ public class Lexer extends DFA { // TODO: Add Unit tests
      * @return This Lexer for fluent calls
      */
     public Lexer init(String input) {
-        this.index = 0;
-        this.input = input;
-        nextToken = null;
+        cursor = new Cursor(this, input);
 
         return this;
     }
@@ -148,23 +721,32 @@ public class Lexer extends DFA { // TODO: Add Unit tests
      * @return This Lexer for fluent calls
      */
     public Lexer reset() {
-        index = 0;
-        nextToken = null;
-        lastMatchNames = null;
+        cursor.reset();
 
         return this;
     }
 
+    /**
+     * Returns a new cursor which tokenizes {@code input} with this Lexer independently of any other cursor,
+     * so that threads can share this Lexer by each using their own cursors
+     * @param input The input String to tokenize
+     * @return A cursor at the beginning of {@code input}
+     */
+    public Cursor cursor(String input) {
+        return new Cursor(this, input);
+    }
+
     /**
      * Returns the label of the last token matched
      * @return The label of the last token matched (filtered for priority if applicable)
      */
     public String lastMatchType() {
-        if (priority != null) {
-            return DFA.toName(highestPriority(lastMatchNames));
-        } else {
-            return DFA.toName(lastMatchNames);
-        }
+        return cursor.lastMatchType();
+    }
+
+    // Returns true if tokens of the given type are skipped by next
+    boolean isOmitted(int type) {
+        return typeOmitted[type];
     }
 
     private Set<String> highestPriority(Set<String> nameSet) {
@@ -183,12 +765,63 @@ public class Lexer extends DFA { // TODO: Add Unit tests
         return highest;
     }
 
+    /**
+     * Moves to the next token matched and not skipped, whose position and type are then given by
+     * {@link #start()}, {@link #end()} and {@link #tokenType()}<br>
+     * Unlike {@link #next()} and {@link #nextToken()}, this allocates nothing
+     * @return True if there was a next token, false if the rest of the input cannot be matched
+     */
+    public boolean advance() {
+        return cursor.advance();
+    }
+
+    /**
+     * Returns the index in the input String where the last token matched starts
+     * @return The index of the first character of the last token matched
+     */
+    public int start() {
+        return cursor.start();
+    }
+
+    /**
+     * Returns the index in the input String just past the last token matched
+     * @return The index after the last character of the last token matched
+     */
+    public int end() {
+        return cursor.end();
+    }
+
+    /**
+     * Returns the type of the last token matched as a number, see {@link #typeName(int)} for its name
+     * @return The type of the last token matched, between 0 and {@link #typeCount()} - 1
+     */
+    public int tokenType() {
+        return cursor.tokenType();
+    }
+
+    /**
+     * Returns the name of a token type
+     * @param type A token type as returned by {@link #tokenType()}
+     * @return The label of tokens of the given type (filtered for priority if applicable)
+     */
+    public String typeName(int type) {
+        return typeNames[type];
+    }
+
+    /**
+     * Returns the number of token types
+     * @return The number of token types, which are numbered 0 to {@code typeCount() - 1}
+     */
+    public int typeCount() {
+        return typeNames.length;
+    }
+
     /**
      * Returns the next token matched and not skipped
      * @return The next token matched and not skipped in the input String
      */
     public Token nextToken() {
-        return new Token(next(), lastMatchType());
+        return cursor.nextToken();
     }
 
     /**
@@ -196,19 +829,7 @@ public class Lexer extends DFA { // TODO: Add Unit tests
      * @return The next String matched and not skipped in the input String
      */
     public String next() {
-        String nextToken = null;
-        boolean skip = true;
-        while (skip) {
-            nextToken = nextMatch();
-            skip = false;
-            for (String name : lastMatchNames) {
-                if (omitNames.contains(name)) {
-                    skip = true;
-                    break;
-                }
-            }
-        }
-        return nextToken;
+        return cursor.next();
     }
 
     /**
@@ -216,7 +837,7 @@ public class Lexer extends DFA { // TODO: Add Unit tests
      * @return The next token matched in the input String (possibly an omitted type)
      */
     public Token nextMatchedToken() {
-        return new Token(nextMatch(), lastMatchType());
+        return cursor.nextMatchedToken();
     }
 
     /**
@@ -224,43 +845,50 @@ public class Lexer extends DFA { // TODO: Add Unit tests
      * @return The next String matched in the input String (possibly an omitted type)
      */
     public String nextMatch() {
-        if (nextToken != null) {
-            String temp = nextToken;
-            nextToken = null;
-            return temp;
-        }
-        lastMatchNames = null;
+        return cursor.nextMatch();
+    }
+
+    /**
+     * Status returned by {@code match} when a token was matched
+     */
+    static final int MATCHED = 0;
 
-        Node current = startState;
-        int startIndex = index;
+    /**
+     * Status returned by {@code match} when there is no input left
+     */
+    static final int END_OF_INPUT = 1;
+
+    /**
+     * Status returned by {@code match} when no token matches the start of the remaining input
+     */
+    static final int UNMATCHED = 2;
+
+    // Returns the longest match in input starting at from as its end shifted left 32 bits plus its type,
+    // or -1 if there is no match (this only reads the DFA, so any number of threads can call it at once)
+    private long longestMatch(String input, int from) {
+        Compiled compiled = compiledAfterUse();
+        if (compiled != null)
+            return compiled.longestMatchAt(input, from);
+
+        int state = start;
         int lastMatchIndex = -1;
+        int matchType = NOT_ACCEPTING;
 
-        while (index < input.length()) {
-            if (!current.neighbors.containsKey(input.charAt(index))) {
-                if (current.neighbors.containsKey(NFA.WILDCARD)) {
-                    current = current.neighbors.get(NFA.WILDCARD);
-                } else {
-                    index = lastMatchIndex;
-                    break;
-                }
-            } else
-                current = current.neighbors.get(input.charAt(index));
+        for (int i = from; i < input.length(); ) {
+            state = step(state, input.charAt(i));
+            if (state == DEAD)
+                break;
 
-            index++;
-            if (acceptStates.contains(current)) {
-                lastMatchIndex = index;
-                lastMatchNames = current.regexMatch;
+            i++;
+            if (label[state] != NOT_ACCEPTING) {
+                lastMatchIndex = i;
+                matchType = label[state];
             }
         }
 
-        if (lastMatchIndex == -1) {
-            index = startIndex;
-            lastMatchNames = null;
-            throw new NoSuchElementException();
-        } else {
-            index = lastMatchIndex;
-            return input.substring(startIndex, lastMatchIndex);
-        }
+        if (lastMatchIndex == -1)
+            return -1;
+        return (long) lastMatchIndex << 32 | matchType;
     }
 
     /**
@@ -268,16 +896,7 @@ public class Lexer extends DFA { // TODO: Add Unit tests
      * @return True if the input String has any more non-omitted tokens to be matched
      */
     public boolean hasNext() {
-        if (nextToken != null)
-            return true;
-
-        try {
-            nextToken = next();
-        } catch (NoSuchElementException e) {
-            return false;
-        }
-
-        return true;
+        return cursor.hasNext();
     }
 
     /**
@@ -285,16 +904,7 @@ public class Lexer extends DFA { // TODO: Add Unit tests
      * @return True if the input String has any tokens left to be matched (includes tokens to be skipped)
      */
     public boolean hasNextMatch() {
-        if (nextToken != null)
-            return true;
-
-        try {
-            nextToken = nextMatch();
-        } catch (NoSuchElementException e) {
-            return false;
-        }
-
-        return true;
+        return cursor.hasNextMatch();
     }
 
     /**
@@ -303,15 +913,81 @@ public class Lexer extends DFA { // TODO: Add Unit tests
      * The unmatched portion of the input is added as the last Token whose type is "UNMATCHED by Lexer"
      */
     public Token[] tokenize() {
-        List<Token> tokens = new ArrayList<>();
-        while (hasNext()) {
-            tokens.add(nextToken());
+        return cursor.tokenize();
+    }
+
+    /**
+     * Matches the rest of the input, adding every token matched and not skipped to {@code tokens}
+     * @param tokens The buffer to add the matched tokens to
+     * @return The index in the input String where matching stopped,
+     * i.e. the length of the input unless some of it could not be matched
+     */
+    public int tokenizeInto(TokenBuffer tokens) {
+        return cursor.tokenizeInto(tokens);
+    }
+
+    // Inputs shorter than this are not split into chunks by tokenizeParallel
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    /**
+     * Matches the rest of the input in parallel, returning the same tokens as {@link #tokenize()}<br>
+     * The input is split into chunks (preferably just after newlines) which are matched on the common
+     * {@link java.util.concurrent.ForkJoinPool}, then the chunks are stitched together in order,
+     * where the region around a boundary is matched again if a token crosses it
+     * @return The rest of the input that can be matched as an array of {@link Token}s<br>
+     * The unmatched portion of the input is added as the last Token whose type is "UNMATCHED by Lexer"
+     */
+    public Token[] tokenizeParallel() {
+        return cursor.tokenizeParallel();
+    }
+
+    /**
+     * Matches the rest of the input in parallel as in {@link #tokenizeParallel()},
+     * adding every token matched and not skipped to {@code tokens} as in {@link #tokenizeInto(TokenBuffer)}
+     * @param tokens The buffer to add the matched tokens to
+     * @return The index in the input String where matching stopped,
+     * i.e. the length of the input unless some of it could not be matched
+     */
+    public int tokenizeParallelInto(TokenBuffer tokens) {
+        return cursor.tokenizeParallelInto(tokens);
+    }
+
+    // Splits the rest of the input into the given number of chunks, see tokenizeParallelInto(TokenBuffer)
+    int tokenizeParallelInto(TokenBuffer tokens, int chunkCount) {
+        return cursor.tokenizeParallelInto(tokens, chunkCount);
+    }
+
+    // The matches (including skipped ones) found by matching a chunk of the input on its own
+    private static class Chunk {
+        // The first match starts at start and matches continue until one ends at or after the start of the next
+        // chunk (end is where the last match ends) or until stuck, when the input at end cannot be matched
+        int start;
+        int end;
+        boolean stuck = false;
+        TokenBuffer matches = new TokenBuffer();
+
+        Chunk(int start) {
+            this.start = start;
+        }
+    }
+
+    // Matches input from start until a match ends at or after to (or until stuck)
+    private Chunk matchChunk(String input, int start, int to) {
+        Chunk chunk = new Chunk(start);
+        int position = start;
+        while (position < to) {
+            long match = longestMatch(input, position);
+            if (match == -1) {
+                chunk.stuck = true;
+                break;
+            }
+
+            int end = (int) (match >>> 32);
+            chunk.matches.add(position, end, (int) match);
+            position = end;
         }
-        if(!remaining().isEmpty())
-            tokens.add(new Token(remaining(), "UNMATCHED by Lexer"));
-        Token[] finalTokens = new Token[tokens.size()];
-        tokens.toArray(finalTokens);
-        return finalTokens;
+        chunk.end = position;
+        return chunk;
     }
 
     /**
@@ -321,7 +997,7 @@ public class Lexer extends DFA { // TODO: Add Unit tests
      * @return The remaining unseen portion of the input String.
      */
     public String remaining() {
-        return input.substring(index);
+        return cursor.remaining();
     }
 
     public static void main(String[] args) {
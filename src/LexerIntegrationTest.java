@@ -0,0 +1,292 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.tools.ToolProvider;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LexerIntegrationTest {
+    private static final String[] NAMES = {"Name", "Int", "Operation", "WhiteSpace", "EQ", "Comment"};
+    private static final String[] TOKENS = {"(" + Lexer.LETTER + "|" + Lexer.DIGIT + ")*", Lexer.DIGIT + "+",
+            "\\+|\\*|/|-|%", Lexer.OPTIONAL_WHITESPACE, "=", "//.*\n"};
+    private static final String[] OMIT = {"WhiteSpace", "Comment"};
+    private static final Map<String, Integer> PRIORITY = Map.of("Name", -1);
+    private static final String INPUT = "x1 = 42 + y // comment\nlonger_name2 * 7 = 8-9 // another\n";
+
+    private static Lexer makeLexer() {
+        return new Lexer(NAMES, PRIORITY, TOKENS, OMIT);
+    }
+
+    private static List<String> toStrings(Lexer.Token[] tokens) {
+        List<String> strings = new ArrayList<>();
+        for (Lexer.Token token : tokens) {
+            strings.add(token.toString());
+        }
+        return strings;
+    }
+
+    @Test
+    public void tokenizeTest() {
+        List<String> tokens = toStrings(makeLexer().init("x1 = 42 + y").tokenize());
+        assertEquals(List.of("x1 : Name", "= : EQ", "42 : Int", "+ : Operation", "y : Name"), tokens);
+
+        tokens = toStrings(makeLexer().init("a = ?").tokenize());
+        assertEquals(List.of("a : Name", "= : EQ", "? : UNMATCHED by Lexer"), tokens);
+    }
+
+    @Test
+    public void streamingTest() {
+        Lexer lexer = makeLexer();
+        Lexer.Token[] expected = lexer.init(INPUT).tokenize();
+
+        // Small buffers force tokens (and the lookahead past them) to cross refills
+        for (int bufferSize = 1; bufferSize <= 16; bufferSize++) {
+            StreamingLexer streaming = new StreamingLexer(lexer, new StringReader(INPUT), bufferSize);
+            List<String> tokens = new ArrayList<>();
+            while (streaming.hasNext()) {
+                tokens.add(streaming.nextToken().toString());
+            }
+            assertEquals(toStrings(expected), tokens);
+            assertEquals("", streaming.remaining());
+        }
+    }
+
+    @Test
+    public void streamingRemainingTest() {
+        StreamingLexer streaming = new StreamingLexer(makeLexer(), new StringReader("a b ?c d"), 2);
+        assertEquals("a", streaming.next());
+        assertEquals("b", streaming.next());
+        assertFalse(streaming.hasNext());
+        assertEquals("?c d", streaming.remaining());
+    }
+
+    @Test
+    public void advanceTest() {
+        Lexer lexer = makeLexer();
+        Lexer.Token[] expected = lexer.init(INPUT).tokenize();
+
+        lexer.init(INPUT);
+        List<String> tokens = new ArrayList<>();
+        while (lexer.advance()) {
+            tokens.add(INPUT.substring(lexer.start(), lexer.end()) + " : " + lexer.typeName(lexer.tokenType()));
+        }
+        assertEquals(toStrings(expected), tokens);
+
+        // Types are shared by tokens with the same name
+        lexer.init("a 1 b");
+        assertTrue(lexer.advance());
+        int name = lexer.tokenType();
+        assertTrue(lexer.advance());
+        assertEquals("Int", lexer.typeName(lexer.tokenType()));
+        assertTrue(lexer.advance());
+        assertEquals(name, lexer.tokenType());
+        assertEquals(4, lexer.start());
+        assertEquals(5, lexer.end());
+        assertFalse(lexer.advance());
+    }
+
+    @Test
+    public void resolvedTypesTest() {
+        // After "a" both A and B match but A has priority, so it is the same type as after "b"
+        String[] names = {"A", "B"};
+        String[] tokens = {"a|b", "a"};
+        Lexer lexer = new Lexer(names, Map.of("A", 1), tokens);
+        assertEquals(2, lexer.stateCount);
+        assertEquals(List.of("a : A", "b : A"), toStrings(lexer.init("ab").tokenize()));
+
+        lexer = new Lexer(names, tokens);
+        assertEquals(3, lexer.stateCount);
+        assertEquals(List.of("a : A | B", "b : A"), toStrings(lexer.init("ab").tokenize()));
+    }
+
+    @Test
+    public void tokenizeIntoTest() {
+        Lexer lexer = makeLexer();
+        Lexer.Token[] expected = lexer.init(INPUT).tokenize();
+
+        // Start small so that the buffer has to grow
+        Lexer.TokenBuffer buffer = new Lexer.TokenBuffer(1);
+        assertEquals(INPUT.length(), lexer.init(INPUT).tokenizeInto(buffer));
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < buffer.size(); i++) {
+            tokens.add(INPUT.substring(buffer.start(i), buffer.end(i)) + " : " + lexer.typeName(buffer.type(i)));
+        }
+        assertEquals(toStrings(expected), tokens);
+
+        buffer.clear();
+        assertEquals(4, lexer.init("a b ?c").tokenizeInto(buffer));
+        assertEquals(2, buffer.size());
+    }
+
+    @Test
+    public void lookaheadTest() {
+        Lexer lexer = makeLexer().init("a // comment\n");
+        assertEquals("a", lexer.next());
+        // The next match is skipped by next
+        assertTrue(lexer.hasNextMatch());
+        assertFalse(lexer.hasNext());
+        assertThrows(NoSuchElementException.class, lexer::next);
+
+        lexer.reset();
+        assertEquals("a", lexer.nextMatch());
+        assertTrue(lexer.hasNextMatch());
+        assertEquals(" ", lexer.nextMatch());
+        assertEquals("WhiteSpace", lexer.lastMatchType());
+        assertEquals("// comment\n", lexer.nextMatch());
+        assertFalse(lexer.hasNextMatch());
+        assertEquals("", lexer.remaining());
+    }
+
+    @Test
+    public void parallelTest() {
+        Lexer lexer = makeLexer();
+        String input = INPUT.repeat(20);
+        List<String> expected = toStrings(lexer.init(input).tokenize());
+
+        // Tokens (like comments) cross many of the boundaries between chunks
+        for (int chunks = 1; chunks <= 64; chunks++) {
+            Lexer.TokenBuffer buffer = new Lexer.TokenBuffer();
+            assertEquals(input.length(), lexer.init(input).tokenizeParallelInto(buffer, chunks));
+            List<String> tokens = new ArrayList<>();
+            for (int i = 0; i < buffer.size(); i++) {
+                tokens.add(input.substring(buffer.start(i), buffer.end(i)) + " : " + lexer.typeName(buffer.type(i)));
+            }
+            assertEquals(expected, tokens, "chunks = " + chunks);
+        }
+        assertEquals(expected, toStrings(lexer.init(input).tokenizeParallel()));
+
+        // Matching stops at the first unmatched character, even if later chunks match
+        String line = "x1 = 42 + y\n";
+        String unmatched = line.repeat(5) + "? " + line.repeat(5);
+        for (int chunks = 1; chunks <= 16; chunks++) {
+            Lexer.TokenBuffer buffer = new Lexer.TokenBuffer();
+            assertEquals(5 * line.length(), lexer.init(unmatched).tokenizeParallelInto(buffer, chunks));
+            assertEquals(25, buffer.size());
+            assertEquals("? " + line.repeat(5), lexer.remaining());
+        }
+    }
+
+    @Test
+    public void cursorTest() throws Exception {
+        Lexer lexer = makeLexer();
+        List<String> expected = toStrings(lexer.init(INPUT).tokenize());
+
+        // Cursors on the same Lexer are independent of each other and of the Lexer's own cursor
+        Lexer.Cursor first = lexer.cursor(INPUT);
+        Lexer.Cursor second = lexer.cursor("a = b");
+        lexer.init(INPUT);
+        assertEquals("x1", first.next());
+        assertEquals("a", second.next());
+        assertEquals("x1", lexer.next());
+        assertEquals("=", first.next());
+        assertEquals("EQ", first.lastMatchType());
+        assertEquals("Name", lexer.lastMatchType());
+        assertEquals(expected.subList(2, expected.size()), toStrings(first.tokenize()));
+        assertEquals(List.of("= : EQ", "b : Name"), toStrings(second.tokenize()));
+        assertEquals(expected, toStrings(first.reset().tokenize()));
+
+        // Many threads share one Lexer
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    if (!expected.equals(toStrings(lexer.cursor(INPUT).tokenize())))
+                        failures.add(new AssertionError("Wrong tokens in iteration " + i));
+                }
+            });
+            thread.setUncaughtExceptionHandler((th, e) -> failures.add(e));
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(List.of(), failures);
+    }
+
+    @Test
+    public void serializeTest() throws IOException {
+        Lexer lexer = makeLexer();
+        Path file = Files.createTempFile("lexer", ".bin");
+        try {
+            try (OutputStream out = Files.newOutputStream(file)) {
+                lexer.writeTo(out);
+            }
+            Lexer loaded = Lexer.readFrom(file);
+
+            assertEquals(toStrings(lexer.init(INPUT).tokenize()), toStrings(loaded.init(INPUT).tokenize()));
+            assertEquals(lexer.typeCount(), loaded.typeCount());
+            assertTrue(DFA.readFrom(file) instanceof Lexer);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void toJavaTest() throws Exception {
+        Lexer lexer = makeLexer();
+        DFA dfa = new DFA("(a|b)*abb");
+        Path dir = Files.createTempDirectory("generated");
+        Path lexerSource = dir.resolve("LexerMatcher.java");
+        Path dfaSource = dir.resolve("AbbMatcher.java");
+        Files.writeString(lexerSource, lexer.toJava("generated.LexerMatcher"));
+        Files.writeString(dfaSource, dfa.toJava("AbbMatcher"));
+        assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null,
+                "-d", dir.toString(), lexerSource.toString(), dfaSource.toString()));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{dir.toUri().toURL()})) {
+            Class<?> generated = loader.loadClass("generated.LexerMatcher");
+            Method longestMatch = generated.getMethod("longestMatch", CharSequence.class, int.class);
+            Method typeName = generated.getMethod("typeName", int.class);
+            Method isOmitted = generated.getMethod("isOmitted", int.class);
+            assertEquals(lexer.typeCount() - 1, generated.getField("COMMENT").getInt(null));
+
+            List<String> tokens = new ArrayList<>();
+            int index = 0;
+            long match;
+            while ((match = (long) longestMatch.invoke(null, INPUT, index)) != -1) {
+                int end = (int) (match >>> 32);
+                if (!(boolean) isOmitted.invoke(null, (int) match))
+                    tokens.add(INPUT.substring(index, end) + " : " + typeName.invoke(null, (int) match));
+                index = end;
+            }
+            assertEquals(INPUT.length(), index);
+            assertEquals(toStrings(lexer.init(INPUT).tokenize()), tokens);
+
+            Method matches = loader.loadClass("AbbMatcher").getMethod("match", CharSequence.class);
+            for (String input : new String[]{"abb", "babb", "abab", "", "abbc"}) {
+                assertEquals(dfa.match(input), matches.invoke(null, input), input);
+            }
+        } finally {
+            try (var files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void compileAfterTest() {
+        Lexer lexer = makeLexer();
+        List<String> expected = toStrings(lexer.init(INPUT).tokenize());
+
+        // The tables are used for the first 5 tokens, then the compiled class
+        lexer.compileAfter(5);
+        // Asking whether the Lexer has been compiled does not count as a use
+        for (int i = 0; i < 10; i++) {
+            assertNull(lexer.compiled());
+        }
+        assertEquals(expected, toStrings(lexer.init(INPUT).tokenize()));
+        assertNotNull(lexer.compiled());
+        assertEquals(expected, toStrings(lexer.init(INPUT).tokenize()));
+        assertEquals(expected, toStrings(lexer.init(INPUT).tokenizeParallel()));
+    }
+}
@@ -8,8 +8,9 @@ import java.util.stream.Stream;
  * </p>
  *
  * <p>
- * NFA does not currently support matching a String against a regex,
- * if this is your intent, see {@link DFA} which turns an NFA into an equivalent Deterministic Finite Automaton
+ * NFA can match a String against a regex directly by simulating every state it could be in at once,
+ * which needs no up-front construction and memory linear in the size of the regex,
+ * for repeated matching see {@link DFA} which turns an NFA into an equivalent Deterministic Finite Automaton
  * </p>
  *
  * <p>
@@ -22,6 +23,11 @@ public class NFA {
      */
     public static final char WILDCARD = '\177';
 
+    /**
+     * The largest number of Strings in an alternation of literals (e.g. keywords) which is built as a trie
+     */
+    static final int MAX_TRIE_STRINGS = 10000;
+
     static class Node {
         // If Node is an acceptState, this is what it matches (for use in Lexer)
         String regexMatch;
@@ -29,6 +35,9 @@ public class NFA {
         // Transitions where '\0' is the empty transition
         Map<Character, List<Node>> neighbors = new HashMap<>();
 
+        // Index of this Node in states (set by number)
+        int id;
+
         // Add transition from key to neighbor
         void put(char key, Node neighbor) {
             if (!neighbors.containsKey(key)) {
@@ -37,11 +46,140 @@ public class NFA {
 
             neighbors.get(key).add(neighbor);
         }
+
+        // Transitions on every character in a range (for character classes)
+        List<Range> ranges = new ArrayList<>();
+
+        // Add transition from every character from first to last (inclusive) to neighbor
+        void putRange(char first, char last, Node neighbor) {
+            ranges.add(new Range(first, last, neighbor));
+        }
+    }
+
+    // A transition on every character from first to last (inclusive)
+    static class Range {
+        final char first;
+        final char last;
+        final Node target;
+
+        Range(char first, char last, Node target) {
+            this.first = first;
+            this.last = last;
+            this.target = target;
+        }
     }
 
     Node startState = null;
     List<Node> acceptStates = new ArrayList<>();
 
+    // The Nodes reachable from startState, where states[i].id == i (null until number is called)
+    Node[] states;
+    // closures[i] is the ids of the Nodes reachable from states[i] using only empty transitions
+    // (arrays rather than BitSets, which would take space for every id below the largest)
+    int[][] closures;
+    // The non-empty transitions of states[i] are on the characters from edgeFirst[i][j] to edgeLast[i][j]
+    // (inclusive) to states[edgeTargets[i][j]], where a wildcard transition is on every character
+    char[][] edgeFirst;
+    char[][] edgeLast;
+    int[][] edgeTargets;
+    // The empty transitions of states[i] are to states[emptyTargets[i][j]]
+    int[][] emptyTargets;
+    // The set of ids of acceptStates
+    BitSet finalStates;
+
+    /**
+     * Numbers the Nodes of this NFA 0 to n-1 in breadth-first order from startState and computes the empty
+     * transition closure of every Node; later calls do nothing
+     */
+    void number() {
+        if (states != null)
+            return;
+
+        List<Node> order = new ArrayList<>();
+        Set<Node> seen = new HashSet<>();
+        order.add(startState);
+        seen.add(startState);
+        for (int i = 0; i < order.size(); i++) {
+            Node node = order.get(i);
+            node.id = i;
+            for (List<Node> neighbors : node.neighbors.values()) {
+                for (Node neighbor : neighbors) {
+                    if (seen.add(neighbor))
+                        order.add(neighbor);
+                }
+            }
+            for (Range range : node.ranges) {
+                if (seen.add(range.target))
+                    order.add(range.target);
+            }
+        }
+        states = order.toArray(new Node[0]);
+
+        edgeFirst = new char[states.length][];
+        edgeLast = new char[states.length][];
+        edgeTargets = new int[states.length][];
+        emptyTargets = new int[states.length][];
+        for (Node node : states) {
+            StringBuilder first = new StringBuilder();
+            StringBuilder last = new StringBuilder();
+            List<Integer> targets = new ArrayList<>();
+            List<Integer> empty = new ArrayList<>();
+            for (Character c : node.neighbors.keySet()) {
+                for (Node neighbor : node.neighbors.get(c)) {
+                    if (c == '\0') {
+                        empty.add(neighbor.id);
+                    } else {
+                        first.append(c == WILDCARD ? Character.MIN_VALUE : c);
+                        last.append(c == WILDCARD ? Character.MAX_VALUE : c);
+                        targets.add(neighbor.id);
+                    }
+                }
+            }
+            for (Range range : node.ranges) {
+                first.append(range.first);
+                last.append(range.last);
+                targets.add(range.target.id);
+            }
+
+            edgeFirst[node.id] = first.toString().toCharArray();
+            edgeLast[node.id] = last.toString().toCharArray();
+            edgeTargets[node.id] = targets.stream().mapToInt(Integer::intValue).toArray();
+            emptyTargets[node.id] = empty.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        closures = new int[states.length][];
+        int[] stack = new int[states.length];
+        // The Node (plus one) whose closure each Node was last added to
+        int[] addedTo = new int[states.length];
+        for (Node node : states) {
+            // Breadth-first search along empty transitions, where the closure is the visited part of stack
+            addedTo[node.id] = node.id + 1;
+            int size = 0;
+            stack[size++] = node.id;
+            for (int i = 0; i < size; i++) {
+                for (int neighbor : emptyTargets[stack[i]]) {
+                    if (addedTo[neighbor] != node.id + 1) {
+                        addedTo[neighbor] = node.id + 1;
+                        stack[size++] = neighbor;
+                    }
+                }
+            }
+            closures[node.id] = Arrays.copyOf(stack, size);
+        }
+
+        finalStates = new BitSet(states.length);
+        for (Node node : acceptStates) {
+            finalStates.set(node.id);
+        }
+    }
+
+    // Adds the ids in the closure of states[id] to set
+    void addClosure(int id, BitSet set) {
+        for (int reached : closures[id]) {
+            set.set(reached);
+        }
+    }
+
     /**
      * Constructs an NFA that matches any of the given regular expressions
      * where accepting states are labeled with given names
@@ -117,6 +255,19 @@ public class NFA {
             return nfa;
         }
 
+        // If regex is a character class, create an NFA that matches any single character in its ranges
+        if (regex.isCharClass()) {
+            Node start = new Node();
+            Node end = new Node();
+            char[] ranges = regex.ranges();
+            for (int i = 0; i < ranges.length; i += 2) {
+                start.putRange(ranges[i], ranges[i + 1], end);
+            }
+            nfa.startState = start;
+            nfa.acceptStates.add(end);
+            return nfa;
+        }
+
         // If regex is just a character, create an NFA that matches only that character
         if (!regex.isOperator()) {
             Node start = new Node();
@@ -139,6 +290,13 @@ public class NFA {
                 }
                 break;
             case '|':
+                // An alternation of literals is built as a trie, which has no empty transitions
+                // and a Node for each distinct prefix of the literals (any other alternation is a balanced tree of
+                // ORs, see RegexAST, so this recursion is only logarithmic in the number of alternatives)
+                Set<String> literals = regex.literalStrings(MAX_TRIE_STRINGS);
+                if (literals != null)
+                    return makeTrie(literals);
+
                 nfaLeft = makeNFA(regex.left());
                 nfaRight = makeNFA(regex.right());
                 nfa = new NFA();
@@ -158,6 +316,255 @@ public class NFA {
         return nfa;
     }
 
+    /**
+     * Constructs an NFA that matches exactly the given Strings, where the Nodes form a trie (a Node for each
+     * distinct prefix of the Strings, with no empty transitions) so the NFA is already deterministic
+     * @param literals The Strings to be matched
+     * @return The constructed NFA
+     */
+    public static NFA makeTrie(Collection<String> literals) {
+        NFA nfa = new NFA();
+        nfa.startState = new Node();
+        Set<Node> acceptStates = new LinkedHashSet<>();
+        for (String literal : literals) {
+            Node node = nfa.startState;
+            for (int i = 0; i < literal.length(); i++) {
+                List<Node> next = node.neighbors.get(literal.charAt(i));
+                if (next == null) {
+                    Node child = new Node();
+                    node.put(literal.charAt(i), child);
+                    node = child;
+                } else {
+                    node = next.get(0);
+                }
+            }
+            acceptStates.add(node);
+        }
+        nfa.acceptStates.addAll(acceptStates);
+        return nfa;
+    }
+
+    /**
+     * Partitions the characters into classes which every transition of this NFA treats the same way,
+     * where class 0 is every character without a transition of its own (only wildcard transitions apply to it)
+     * and every other class is a range of characters with the same transitions<br>
+     * So the transitions on a character class (or a wildcard) stay a few classes however many characters they cover
+     * @return An array of size 65536 giving the class of every character (numbered by their first character)
+     */
+    char[] partition() {
+        number();
+
+        // Every transition which is not a wildcard starts a class at its first character
+        // and ends one after its last character, covered counts the transitions covering a character
+        int[] covered = new int[Character.MAX_VALUE + 2];
+        boolean[] boundary = new boolean[Character.MAX_VALUE + 2];
+        for (int id = 0; id < states.length; id++) {
+            for (int k = 0; k < edgeFirst[id].length; k++) {
+                char first = edgeFirst[id][k];
+                char last = edgeLast[id][k];
+                if (first == Character.MIN_VALUE && last == Character.MAX_VALUE)
+                    continue;
+                covered[first]++;
+                covered[last + 1]--;
+                boundary[first] = true;
+                boundary[last + 1] = true;
+            }
+        }
+
+        char[] classOfChar = new char[Character.MAX_VALUE + 1];
+        int classCount = 1;
+        int cover = 0;
+        int cls = 0;
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            cover += covered[c];
+            if (boundary[c])
+                cls = cover > 0 ? classCount++ : 0;
+            classOfChar[c] = (char) cls;
+        }
+        return classOfChar;
+    }
+
+    /**
+     * Returns an NFA which matches the reverse of every String matched by this NFA (accepting states are unlabeled)
+     * @return A new NFA (sharing no Nodes with this NFA) whose transitions are those of this NFA reversed
+     */
+    public NFA reverse() {
+        number();
+
+        Node[] reversed = new Node[states.length];
+        for (int id = 0; id < states.length; id++) {
+            reversed[id] = new Node();
+        }
+        for (Node node : states) {
+            node.neighbors.forEach((c, neighbors) -> {
+                for (Node neighbor : neighbors) {
+                    reversed[neighbor.id].put(c, reversed[node.id]);
+                }
+            });
+            for (Range range : node.ranges) {
+                reversed[range.target.id].putRange(range.first, range.last, reversed[node.id]);
+            }
+        }
+
+        NFA nfa = new NFA();
+        nfa.startState = new Node();
+        for (Node node : acceptStates) {
+            nfa.startState.put('\0', reversed[node.id]);
+        }
+        nfa.acceptStates.add(reversed[startState.id]);
+        return nfa;
+    }
+
+    /**
+     * Returns an NFA which matches any String ending with a String matched by this NFA, i.e. {@code .*} followed by
+     * this NFA, so that it accepts after every prefix of an input which ends with a match
+     * @return A new NFA (sharing no Nodes with this NFA) for {@code .*} followed by this NFA
+     */
+    public NFA unanchored() {
+        number();
+
+        Node[] copies = new Node[states.length];
+        for (int id = 0; id < states.length; id++) {
+            copies[id] = new Node();
+            copies[id].regexMatch = states[id].regexMatch;
+        }
+        for (Node node : states) {
+            node.neighbors.forEach((c, neighbors) -> {
+                for (Node neighbor : neighbors) {
+                    copies[node.id].put(c, copies[neighbor.id]);
+                }
+            });
+            for (Range range : node.ranges) {
+                copies[node.id].putRange(range.first, range.last, copies[range.target.id]);
+            }
+        }
+
+        NFA nfa = new NFA();
+        nfa.startState = new Node();
+        nfa.startState.put(WILDCARD, nfa.startState);
+        nfa.startState.put('\0', copies[startState.id]);
+        for (Node node : acceptStates) {
+            nfa.acceptStates.add(copies[node.id]);
+        }
+        return nfa;
+    }
+
+    /**
+     * A set of Node ids supporting constant time insertion, membership and clearing
+     * (the sparse set representation of Briggs and Torczon)
+     */
+    static class SparseSet {
+        // The members are dense[0] to dense[size - 1], and id is a member iff dense[sparse[id]] == id
+        final int[] dense;
+        final int[] sparse;
+        int size = 0;
+
+        SparseSet(int capacity) {
+            dense = new int[capacity];
+            sparse = new int[capacity];
+        }
+
+        boolean contains(int id) {
+            int i = sparse[id];
+            return i < size && dense[i] == id;
+        }
+
+        // Adds id and returns true if it was not already a member
+        boolean add(int id) {
+            if (contains(id))
+                return false;
+            sparse[id] = size;
+            dense[size++] = id;
+            return true;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Returns true if {@code input} is matched by this NFA<br>
+     * The NFA is simulated directly, so no {@link DFA} is constructed
+     * and the memory used is linear in the number of states of this NFA
+     * @param input A string to check against the regular expression(s) this NFA was constructed with
+     * @return True if {@code input} matches the regular expression represented by this NFA
+     */
+    public boolean match(CharSequence input) {
+        number();
+
+        SparseSet current = new SparseSet(states.length);
+        int[] stack = new int[states.length];
+        addClosure(current, startState.id, stack);
+
+        return match(input, 0, current, new SparseSet(states.length), stack);
+    }
+
+    // Continues the simulation from the Nodes in current at input.charAt(from)
+    // where next and stack are scratch space (of size states.length) and current is overwritten
+    boolean match(CharSequence input, int from, SparseSet current, SparseSet next, int[] stack) {
+        for (int i = from; i < input.length() && current.size > 0; i++) {
+            step(current, input.charAt(i), next, stack);
+
+            SparseSet temp = current;
+            current = next;
+            next = temp;
+        }
+
+        return accepts(current);
+    }
+
+    // Sets next to the Nodes reachable from those in current on c (including by empty transitions after c)
+    void step(SparseSet current, char c, SparseSet next, int[] stack) {
+        next.clear();
+        for (int j = 0; j < current.size; j++) {
+            int id = current.dense[j];
+            for (int k = 0; k < edgeFirst[id].length; k++) {
+                if (edgeFirst[id][k] <= c && c <= edgeLast[id][k])
+                    addClosure(next, edgeTargets[id][k], stack);
+            }
+        }
+    }
+
+    // Returns true if set contains an accepting Node
+    boolean accepts(SparseSet set) {
+        for (int j = 0; j < set.size; j++) {
+            if (finalStates.get(set.dense[j]))
+                return true;
+        }
+        return false;
+    }
+
+    // Adds id and every Node reachable from it by empty transitions to set
+    void addClosure(SparseSet set, int id, int[] stack) {
+        if (!set.add(id))
+            return;
+
+        int top = 0;
+        stack[top++] = id;
+        while (top > 0) {
+            for (int neighbor : emptyTargets[stack[--top]]) {
+                if (set.add(neighbor))
+                    stack[top++] = neighbor;
+            }
+        }
+    }
+
+    // Returns the label of a transition on c in GraphViz representations
+    static String label(char c) {
+        switch (c) {
+            case '\0': return "eps";
+            case NFA.WILDCARD: return "WILDCARD";
+            case ' ': return "SPACE";
+            case '\n': return "NEWLINE";
+            case '\t': return "TAB";
+            case '\f': return "FORMFEED";
+            case '\r': return "CARRIAGERETURN";
+            case '\\': return "BACKSLASH";
+            default: return Character.toString(c);
+        }
+    }
+
     /**
      * Returns A GraphViz representation of this NFA
      * @return A GraphViz representation of this NFA with labeled edges for transitions
@@ -179,22 +586,20 @@ public class NFA {
                         toProcess.add(neighbor);
                     }
 
-                    String label;
-                    switch (c) {
-                        case '\0': label = "eps"; break;
-                        case NFA.WILDCARD: label = "WILDCARD"; break;
-                        case ' ': label = "SPACE"; break;
-                        case '\n': label = "NEWLINE"; break;
-                        case '\t': label = "TAB"; break;
-                        case '\f': label = "FORMFEED"; break;
-                        case '\r': label = "CARRIAGERETURN"; break;
-                        case '\\': label = "BACKSLASH"; break;
-                        default: label = Character.toString(c);
-                    }
-
                     out.append("a").append(name.get(currentNode)).append(" -> a").append(name.get(neighbor))
-                            .append(" [label = \"").append(label).append("\"];\n");
+                            .append(" [label = \"").append(label(c)).append("\"];\n");
+                }
+            }
+            for (Range range : currentNode.ranges) {
+                if (!name.keySet().contains(range.target)) {
+                    name.put(range.target, nextName++);
+                    toProcess.add(range.target);
                 }
+
+                String label = range.first == range.last ? label(range.first) :
+                        label(range.first) + "-" + label(range.last);
+                out.append("a").append(name.get(currentNode)).append(" -> a").append(name.get(range.target))
+                        .append(" [label = \"").append(label).append("\"];\n");
             }
         }
 
@@ -0,0 +1,126 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.StringJoiner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NFAIntegrationTest {
+    @Test
+    public void matchTest() {
+        NFA nfa = NFA.makeNFA("(a|b)+ab*");
+        assertTrue(nfa.match("aab"));
+        assertTrue(nfa.match("bbabbb"));
+        assertFalse(nfa.match("ab"));
+        assertFalse(nfa.match(""));
+        assertFalse(nfa.match("abc"));
+    }
+
+    @Test
+    public void emptyWordTest() {
+        NFA nfa = NFA.makeNFA("");
+        assertTrue(nfa.match(""));
+        assertFalse(nfa.match("a"));
+
+        assertTrue(NFA.makeNFA("(a*)*").match(""));
+    }
+
+    @Test
+    public void trieTest() {
+        NFA nfa = NFA.makeNFA("if|iff|in|int|else|(x|y)z?");
+        nfa.number();
+        // One Node per distinct prefix: "", i, if, iff, in, int, e, el, els, else, x, y, xz, yz
+        assertEquals(14, nfa.states.length);
+        for (String word : new String[]{"if", "iff", "in", "int", "else", "x", "yz"}) {
+            assertTrue(nfa.match(word), word);
+        }
+        for (String word : new String[]{"", "i", "iffy", "els", "z", "xy"}) {
+            assertFalse(nfa.match(word), word);
+        }
+
+        // Tries are combined with the rest of the regex
+        nfa = NFA.makeNFA("(if|in)*x");
+        assertTrue(nfa.match("x"));
+        assertTrue(nfa.match("ininifx"));
+        assertFalse(nfa.match("iix"));
+    }
+
+    @Test
+    public void trieSpecialCharactersTest() {
+        // Classes with '\0' or the wildcard's character (DEL) are not put in a trie, so an alternation of them
+        // matches what the class on its own does
+        String[][] regexes = {{"[\0a]|b", "[\0ab]"}, {"[\177a]|b", "[\177ab]"}, {"[\0-\37\177]|x", "[\0-\37\177x]"}};
+        String[] inputs = {"", "\0", "\37", "\177", "a", "b", "x", "z", "ab"};
+        for (String[] pair : regexes) {
+            assertNull(new RegexAST(pair[0]).literalStrings(NFA.MAX_TRIE_STRINGS), pair[0]);
+            NFA nfa = NFA.makeNFA(pair[0]);
+            NFA expected = NFA.makeNFA(pair[1]);
+            DFA dfa = new DFA(pair[0]);
+            for (String input : inputs) {
+                assertEquals(expected.match(input), nfa.match(input), pair[0] + " on " + input);
+                assertEquals(expected.match(input), dfa.match(input), pair[0] + " on " + input);
+            }
+        }
+        assertTrue(new DFA("[\0a]|b").match("\0"));
+        assertFalse(new DFA("[\177a]|b").match("z"));
+    }
+
+    @Test
+    public void longAlternationTest() {
+        StringJoiner keywords = new StringJoiner("|");
+        for (int i = 0; i < NFA.MAX_TRIE_STRINGS; i++) {
+            keywords.add("k" + i);
+        }
+        // Neither parsing nor building the trie takes a level of recursion per alternative
+        DFA dfa = new DFA(keywords.toString());
+        assertTrue(dfa.match("k0"));
+        assertTrue(dfa.match("k9999"));
+        assertFalse(dfa.match("k10000"));
+
+        // Nor does building an alternation which is not of literals
+        dfa = new DFA(keywords + "|x*");
+        assertTrue(dfa.match("k5000"));
+        assertTrue(dfa.match("xx"));
+        assertFalse(dfa.match("kx"));
+    }
+
+    @Test
+    public void charClassTest() {
+        NFA nfa = NFA.makeNFA("[a-cx]+[^a-z]\\d");
+        assertTrue(nfa.match("abxcA0"));
+        assertTrue(nfa.match("a\u20ac9"));
+        assertFalse(nfa.match("abd-0"));
+        assertFalse(nfa.match("ab-x"));
+
+        // Ranges are reversed and copied with the rest of the NFA
+        assertTrue(nfa.reverse().match("0Acxba"));
+        assertTrue(nfa.unanchored().match("zzzabxcA0"));
+    }
+
+    @Test
+    public void wildcardTest() {
+        NFA nfa = NFA.makeNFA(".*a");
+        assertTrue(nfa.match("a"));
+        assertTrue(nfa.match("aa"));
+        assertTrue(nfa.match("xya"));
+        assertFalse(nfa.match("ab"));
+    }
+
+    @Test
+    public void agreesWithDFATest() {
+        String regex = "(a|b)*a(a|b){3}";
+        NFA nfa = NFA.makeNFA(regex);
+        DFA dfa = new DFA(regex);
+        for (int i = 0; i < 1 << 8; i++) {
+            String input = Integer.toBinaryString(i).replace('0', 'a').replace('1', 'b');
+            assertEquals(dfa.match(input), nfa.match(input), input);
+        }
+    }
+
+    @Test
+    public void stateExplosionTest() {
+        // The equivalent DFA has over a million states
+        NFA nfa = NFA.makeNFA("(a|b)*a(a|b){20}");
+        assertTrue(nfa.match("bbba" + "b".repeat(20)));
+        assertFalse(nfa.match("bbbb" + "a".repeat(19)));
+    }
+}
@@ -0,0 +1,214 @@
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * This class caches compiled {@link DFA}s and {@link Lexer}s so that a regular expression
+ * (or a set of named, prioritized regular expressions) which is used again is not parsed and compiled again
+ * </p>
+ *
+ * <p>
+ * The cache holds at most a given number of automata and evicts the least recently used one when it is full.
+ * It can be used by any number of threads at once, and when several threads miss on the same key at once
+ * only one of them builds the automaton while the others wait for it.
+ * Cached automata are shared, so a cached Lexer should be used through {@link Lexer#cursor(String)}
+ * rather than its own (not thread-safe) {@link Lexer#init(String)}
+ * </p>
+ *
+ * <p>
+ * The numbers of hits, misses and evictions and the total time spent building automata are counted
+ * </p>
+ */
+public class PatternCache {
+    /**
+     * The number of automata cached by default
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private final int maxEntries;
+
+    // Maps keys to automata (or automata being built) from least to most recently used, guarded by itself
+    private final LinkedHashMap<Object, CompletableFuture<Object>> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder buildNanos = new LongAdder();
+
+    /**
+     * Constructs an empty PatternCache holding at most {@value #DEFAULT_MAX_ENTRIES} automata
+     */
+    public PatternCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructs an empty PatternCache holding at most {@code maxEntries} automata
+     * @param maxEntries The number of automata after which the least recently used one is evicted
+     */
+    public PatternCache(int maxEntries) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be positive");
+
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, CompletableFuture<Object>> eldest) {
+                if (size() <= PatternCache.this.maxEntries)
+                    return false;
+
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a minimal DFA that matches the given regular expression, as constructed by {@link DFA#DFA(String)}
+     * @param regex A valid regular expression to be matched
+     * @return The cached DFA for {@code regex}, which is built if it is not cached
+     */
+    public DFA dfa(String regex) {
+        return (DFA) get(List.of("DFA", regex), () -> new DFA(regex));
+    }
+
+    /**
+     * Returns a DFA that matches any of the given regular expressions where accepting states are labeled with
+     * the given names, as constructed by {@link DFA#DFA(String[], String[])}
+     * @param names An array of the labels where {@code names[i]} corresponds to {@code regex[i]}
+     * @param regex An array of valid regular expressions to be matched
+     * @return The cached DFA for {@code names} and {@code regex}, which is built if it is not cached
+     */
+    public DFA dfa(String[] names, String[] regex) {
+        String[] namesCopy = names.clone();
+        String[] regexCopy = regex.clone();
+        return (DFA) get(List.of("DFA", List.of(namesCopy), List.of(regexCopy)), () -> new DFA(namesCopy, regexCopy));
+    }
+
+    /**
+     * Returns a Lexer with the given prioritized regular expressions and their names which skips certain specified
+     * tokens, as constructed by {@link Lexer#Lexer(String[], Map, String[], String[])}
+     * @param names An array of the labels where {@code names[i]} corresponds to {@code tokenRegex[i]}
+     * @param priority A map from labels in {@code names} to Integers to disambiguate when multiple tokens are matched
+     *                 (or null if no label has a priority)
+     * @param tokenRegex An array of valid regular expressions to be matched
+     * @param omitNames An array of labels in {@code names} that should be skipped/omitted (or null if none are)
+     * @return The cached Lexer for these arguments, which is built if it is not cached
+     */
+    public Lexer lexer(String[] names, Map<String, Integer> priority, String[] tokenRegex, String[] omitNames) {
+        // A missing priority is the same as every label having the default priority
+        String[] namesCopy = names.clone();
+        Map<String, Integer> priorityCopy = priority == null ? Map.of() : Map.copyOf(priority);
+        String[] regexCopy = tokenRegex.clone();
+        String[] omitCopy = omitNames == null ? new String[0] : omitNames.clone();
+
+        Object key = List.of("Lexer", List.of(namesCopy), priorityCopy, List.of(regexCopy), List.of(omitCopy));
+        return (Lexer) get(key, () -> new Lexer(namesCopy, priorityCopy, regexCopy, omitCopy));
+    }
+
+    // Returns the automaton cached for key, building it with build (in this thread) if no thread has yet
+    Object get(Object key, Supplier<Object> build) {
+        CompletableFuture<Object> entry;
+        boolean miss = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new CompletableFuture<>();
+                entries.put(key, entry);
+                miss = true;
+            }
+        }
+
+        if (!miss) {
+            try {
+                // Only a request which gets an automaton is a hit, not one waiting for a build which fails
+                // (whose entry the building thread has removed before failing the future)
+                Object automaton = entry.join();
+                hits.increment();
+                return automaton;
+            } catch (CompletionException e) {
+                // The thread building the automaton has already thrown the same exception
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        }
+
+        misses.increment();
+        long start = System.nanoTime();
+        try {
+            Object automaton = build.get();
+            entry.complete(automaton);
+            return automaton;
+        } catch (RuntimeException | Error e) {
+            // Do not cache failures, the next use of key will try again
+            synchronized (entries) {
+                entries.remove(key, entry);
+            }
+            entry.completeExceptionally(e);
+            throw e;
+        } finally {
+            buildNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the number of automata in this cache
+     * @return The number of automata in this cache (including any being built)
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Removes every automaton from this cache (the counts are kept)
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the number of requests for an automaton which was already cached (or being built, if it was then
+     * built successfully)
+     * @return The number of cache hits so far
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of requests for an automaton which had to be built
+     * @return The number of cache misses so far
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of automata which were evicted to keep this cache within its size
+     * @return The number of evictions so far
+     */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the total time spent building automata on cache misses
+     * @return The total time in nanoseconds spent building automata (including builds which failed)
+     */
+    public long totalBuildNanos() {
+        return buildNanos.sum();
+    }
+
+    public String toString() {
+        return String.format("PatternCache[size = %d/%d, hits = %d, misses = %d, evictions = %d, build time = %.3f ms]",
+                size(), maxEntries, hitCount(), missCount(), evictionCount(), totalBuildNanos() / 1e6);
+    }
+}
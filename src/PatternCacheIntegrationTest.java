@@ -0,0 +1,126 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatternCacheIntegrationTest {
+    @Test
+    public void cacheTest() {
+        PatternCache cache = new PatternCache(2);
+        DFA dfa = cache.dfa("(a|b)*c");
+        assertTrue(dfa.match("abac"));
+        assertSame(dfa, cache.dfa("(a|b)*c"));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+
+        String[] names = {"Name", "WhiteSpace"};
+        String[] tokens = {Lexer.LETTER + "+", Lexer.WHITESPACE};
+        Lexer lexer = cache.lexer(names, null, tokens, new String[]{"WhiteSpace"});
+        assertSame(lexer, cache.lexer(names, Map.of(), tokens, new String[]{"WhiteSpace"}));
+        assertNotSame(lexer, cache.lexer(names, null, tokens, null));
+        assertEquals("b", lexer.cursor("a b").tokenize()[1].value);
+
+        // The least recently used (the DFA) has been evicted
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+        assertNotSame(dfa, cache.dfa("(a|b)*c"));
+        assertEquals(4, cache.missCount());
+        assertTrue(cache.totalBuildNanos() > 0);
+    }
+
+    @Test
+    public void failedBuildTest() {
+        PatternCache cache = new PatternCache();
+        assertThrows(RuntimeException.class, () -> cache.get("key", () -> {
+            throw new IllegalStateException();
+        }));
+        // Failures are not cached
+        assertEquals(0, cache.size());
+        assertEquals("built", cache.get("key", () -> "built"));
+    }
+
+    @Test
+    public void failedBuildWaitersTest() throws Exception {
+        PatternCache cache = new PatternCache();
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger failures = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    cache.get("key", () -> {
+                        building.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        throw new IllegalStateException();
+                    });
+                } catch (IllegalStateException e) {
+                    failures.incrementAndGet();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        building.await();
+        // Give the other threads time to wait for the build, which then fails
+        Thread.sleep(50);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Waiting for a build which failed is not a hit, and the failure is not cached
+        assertEquals(4, failures.get());
+        assertEquals(1, cache.missCount());
+        assertEquals(0, cache.hitCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void singleFlightTest() throws Exception {
+        PatternCache cache = new PatternCache();
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        List<Object> results = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> results.add(cache.get("key", () -> {
+                builds.incrementAndGet();
+                building.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return new Object();
+            })));
+            threads.add(thread);
+            thread.start();
+        }
+
+        building.await();
+        // Give the other threads time to miss while the first is building
+        Thread.sleep(50);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, builds.get());
+        assertEquals(8, results.size());
+        assertEquals(1, new HashSet<>(results).size());
+        assertEquals(1, cache.missCount());
+        assertEquals(7, cache.hitCount());
+    }
+}
@@ -1,3 +1,5 @@
+import java.util.*;
+
 /**
  * <p>
  * This class describes an abstract syntax tree for a given regular expression
@@ -12,11 +14,17 @@
  * A+ -- 1 or more A's <br>
  * A{n} -- exactly n A's <br>
  * A{n,m} -- n to m A's inclusive <br>
- * \x -- escaped x (e.g. \*, \\, \+, \{n,m}, \., etc.); escaping a character unnecissarily has no effect <br>
- * . -- wildcard character (matches any single character)
+ * \x -- escaped x (e.g. \*, \\, \+, \{n,m}, \., \[, etc.); escaping a character unnecissarily has no effect
+ * (except for the classes below) <br>
+ * . -- wildcard character (matches any single character) <br>
+ * [xyz] -- character class (matches any single character listed), where x-y is every character from x to y,
+ * \x is x (e.g. \], \-, \\) and a - first or last is a - <br>
+ * [^xyz] -- negated character class (matches any single character not listed) <br>
+ * \d, \w, \s -- a digit [0-9], a word character [a-zA-Z0-9_], a whitespace character [ \t\n\x0B\f\r]
+ * (also in character classes), and \D, \W, \S for any other character
  */
 public class RegexAST {
-    // TODO: Add support for NOT (~), intersection (&), and ranges (a-z)
+    // TODO: Add support for NOT (~) and intersection (&)
     private static char[] operators = {'|', '*', '^', '~'};
     private static boolean isCharOperator(char c) {
         for (char op : operators) {
@@ -36,6 +44,9 @@ public class RegexAST {
         char value;
         boolean isOperator;
         boolean isWildcard = false;
+        // If this is a character class, the first and last characters of its sorted disjoint ranges
+        // {first0, last0, first1, last1, ...} (null otherwise)
+        char[] ranges;
         ASTNode left; // Not used by non-operators
         ASTNode right; // Not used by unary operators
 
@@ -57,12 +68,27 @@ public class RegexAST {
             return wildcard;
         }
 
+        private static ASTNode getCharClass(char[] ranges) {
+            ASTNode charClass = new ASTNode('[', null, null);
+            charClass.ranges = ranges;
+            return charClass;
+        }
+
         /**
          * @return A flattened representation of the syntax tree in the form (op left right?)
          */
         public String toString() {
             if (isWildcard)
                 return "(WILDCARD)";
+            if (ranges != null) {
+                StringBuilder out = new StringBuilder("[");
+                for (int i = 0; i < ranges.length; i += 2) {
+                    out.append(ranges[i]);
+                    if (ranges[i + 1] != ranges[i])
+                        out.append('-').append(ranges[i + 1]);
+                }
+                return out.append(']').toString();
+            }
             if (!isOperator || left == null) {
                 return Character.toString(value);
             }
@@ -75,7 +101,8 @@ public class RegexAST {
 
         boolean equals(ASTNode that) {
             if (that == null || this.operator != that.operator || this.value != that.value ||
-                    this.isOperator != that.isOperator || this.isWildcard != that.isWildcard)
+                    this.isOperator != that.isOperator || this.isWildcard != that.isWildcard ||
+                    !Arrays.equals(this.ranges, that.ranges))
                 return false;
 
             if (this.left == null)
@@ -90,6 +117,99 @@ public class RegexAST {
         }
     }
 
+    /**
+     * What is known about the literal Strings in every match of a syntax tree
+     */
+    private static class Literals {
+        // The only String matched, or null if more than one String may be matched
+        final String exact;
+        // Every match starts with prefix, ends with suffix and contains factor
+        final String prefix;
+        final String suffix;
+        final String factor;
+
+        Literals(String exact) {
+            this(exact, exact, exact, exact);
+        }
+
+        Literals(String exact, String prefix, String suffix, String factor) {
+            this.exact = exact;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.factor = factor;
+        }
+
+        // Nothing is known about a subtree which may be matched by emptyword (or a wildcard) and something else
+        static final Literals NONE = new Literals(null, "", "", "");
+        static final Literals EMPTY_WORD = new Literals("");
+
+        static Literals of(ASTNode node) {
+            if (node == null)
+                return EMPTY_WORD;
+            if (node.isWildcard)
+                return NONE;
+            if (node.ranges != null) {
+                // A class of one character is that character
+                boolean single = node.ranges.length == 2 && node.ranges[0] == node.ranges[1];
+                return single ? new Literals(Character.toString(node.ranges[0])) : NONE;
+            }
+            if (!node.isOperator)
+                return new Literals(Character.toString(node.value));
+
+            Literals left = of(node.left);
+            switch (node.operator) {
+                case '^':
+                    return concatenate(left, of(node.right));
+                case '|':
+                    // A missing right side is emptyword (the ? quantifier)
+                    return or(left, of(node.right));
+                default:
+                    // A* matches emptyword, so only emptyword* is known
+                    return "".equals(left.exact) ? EMPTY_WORD : NONE;
+            }
+        }
+
+        static Literals concatenate(Literals left, Literals right) {
+            if (left.exact != null && right.exact != null)
+                return new Literals(left.exact + right.exact);
+
+            String prefix = left.exact != null ? left.exact + right.prefix : left.prefix;
+            String suffix = right.exact != null ? left.suffix + right.exact : right.suffix;
+            // The end of the left match and the start of the right match are adjacent in every match
+            String factor = longest(longest(left.factor, right.factor), left.suffix + right.prefix);
+            return new Literals(null, prefix, suffix, longest(factor, longest(prefix, suffix)));
+        }
+
+        static Literals or(Literals left, Literals right) {
+            if (left.exact != null && left.exact.equals(right.exact))
+                return left;
+
+            int prefixLength = 0;
+            while (prefixLength < Math.min(left.prefix.length(), right.prefix.length()) &&
+                    left.prefix.charAt(prefixLength) == right.prefix.charAt(prefixLength))
+                prefixLength++;
+            int suffixLength = 0;
+            while (suffixLength < Math.min(left.suffix.length(), right.suffix.length()) &&
+                    left.suffix.charAt(left.suffix.length() - 1 - suffixLength) ==
+                            right.suffix.charAt(right.suffix.length() - 1 - suffixLength))
+                suffixLength++;
+            String prefix = left.prefix.substring(0, prefixLength);
+            String suffix = left.suffix.substring(left.suffix.length() - suffixLength);
+
+            // A factor of one side which contains the factor of the other side is in every match of both
+            String factor = "";
+            if (left.factor.contains(right.factor))
+                factor = right.factor;
+            else if (right.factor.contains(left.factor))
+                factor = left.factor;
+            return new Literals(null, prefix, suffix, longest(factor, longest(prefix, suffix)));
+        }
+
+        static String longest(String a, String b) {
+            return b.length() > a.length() ? b : a;
+        }
+    }
+
     private ASTNode root;
     private int index = 0;
 
@@ -117,6 +237,23 @@ public class RegexAST {
         return root != null && root.isWildcard;
     }
 
+    /**
+     * Returns true if this represents a character class (e.g. [a-z], [^"] or \d)
+     * @return True if this represents a character class
+     */
+    public boolean isCharClass() {
+        return root != null && root.ranges != null;
+    }
+
+    /**
+     * Returns the ranges of characters matched by the character class this represents
+     * @return The first and last characters (inclusive) of the sorted disjoint ranges of this character class
+     * in the form {first0, last0, first1, last1, ...}, or null if this is not a character class
+     */
+    public char[] ranges() {
+        return isCharClass() ? root.ranges.clone() : null;
+    }
+
     /**
      * Returns the character this represents, with \0 as a default value (if this is not a character)
      * @return The character this represents, with \0 as a default value (if this is not a character)
@@ -160,6 +297,100 @@ public class RegexAST {
         return new RegexAST(root.right);
     }
 
+    /**
+     * Returns a String which every String matched by this syntax tree starts with<br>
+     * This can be used to skip the parts of an input where no match can start, e.g. with {@link String#indexOf}
+     * @return The longest prefix found of every String matched (the empty String if none is found)
+     */
+    public String requiredPrefix() {
+        return Literals.of(root).prefix;
+    }
+
+    /**
+     * Returns a String which every String matched by this syntax tree contains<br>
+     * An input which does not contain it cannot contain a match, e.g. every match of {@code (GET|POST) /index}
+     * contains "T /index"
+     * @return The longest substring found of every String matched (the empty String if none is found)
+     */
+    public String requiredFactor() {
+        return Literals.of(root).factor;
+    }
+
+    /**
+     * Returns the Strings matched by this syntax tree if there are at most {@code limit} of them,
+     * e.g. the keywords of an alternation of keywords
+     * @param limit The largest number of Strings to return
+     * @return The Strings matched by this syntax tree, or null if it matches more than {@code limit} Strings
+     * (or infinitely many)
+     */
+    public Set<String> literalStrings(int limit) {
+        Set<String> strings = new LinkedHashSet<>();
+        return addLiteralStrings(root, limit, strings) ? strings : null;
+    }
+
+    // Adds the Strings matched by node to strings, returns false if there are more than limit of them
+    private static boolean addLiteralStrings(ASTNode node, int limit, Set<String> strings) {
+        if (node == null || !node.isOperator) {
+            if (node != null && node.isWildcard)
+                return false;
+            if (node != null && node.ranges != null) {
+                // Each character of a class is a String, except that '\0' and NFA.WILDCARD cannot be put in a trie
+                // (as transitions on them are the empty and wildcard transitions)
+                for (int i = 0; i < node.ranges.length; i += 2) {
+                    if (strings.size() + node.ranges[i + 1] - node.ranges[i] + 1 > limit)
+                        return false;
+                    if (node.ranges[i] == '\0' ||
+                            (node.ranges[i] <= NFA.WILDCARD && NFA.WILDCARD <= node.ranges[i + 1]))
+                        return false;
+                    for (int c = node.ranges[i]; c <= node.ranges[i + 1]; c++) {
+                        strings.add(Character.toString((char) c));
+                    }
+                }
+                return strings.size() <= limit;
+            }
+            strings.add(node == null ? "" : Character.toString(node.value));
+            return strings.size() <= limit;
+        }
+
+        // The Strings of an OR are added to the same Set, so a long alternation of literals takes linear time,
+        // and nested ORs are visited with an explicit stack rather than a level of recursion each
+        if (node.operator == '|') {
+            List<ASTNode> stack = new ArrayList<>();
+            stack.add(node);
+            while (!stack.isEmpty()) {
+                ASTNode next = stack.remove(stack.size() - 1);
+                if (next != null && next.isOperator && next.operator == '|') {
+                    stack.add(next.right);
+                    stack.add(next.left);
+                } else if (!addLiteralStrings(next, limit, strings)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Set<String> left = new LinkedHashSet<>();
+        if (!addLiteralStrings(node.left, limit, left))
+            return false;
+        if (node.operator == '*') {
+            // Only emptyword* is finite
+            if (!left.equals(Set.of("")))
+                return false;
+            strings.add("");
+            return strings.size() <= limit;
+        }
+
+        Set<String> right = new LinkedHashSet<>();
+        if (!addLiteralStrings(node.right, limit, right) || (long) left.size() * right.size() > limit)
+            return false;
+        for (String l : left) {
+            for (String r : right) {
+                strings.add(l + r);
+            }
+        }
+        return strings.size() <= limit;
+    }
+
     /**
      * Returns true if {@code this} and {@code that} are the same syntax trees<br>
      * Note that two RegexAST can represent the same regex while not being the same AST,
@@ -298,9 +529,23 @@ public class RegexAST {
                 index++;
                 result = null;
 
-                // Match a regex up to the next ')'
-                while (regex.charAt(index) != ')')
-                    result = matchRegex(regex, result);
+                // Match a regex up to the next ')', collecting the alternatives separated by '|' so that a long
+                // alternation does not take a level of recursion per alternative
+                List<ASTNode> alternatives = new ArrayList<>();
+                while (regex.charAt(index) != ')') {
+                    if (regex.charAt(index) == '|') {
+                        // Move forward and start the next alternative
+                        index++;
+                        alternatives.add(result);
+                        result = null;
+                    } else {
+                        result = matchRegex(regex, result);
+                    }
+                }
+                if (!alternatives.isEmpty()) {
+                    alternatives.add(result);
+                    result = or(alternatives, 0, alternatives.size());
+                }
 
                 // Move past the ')'
                 index++;
@@ -316,16 +561,22 @@ public class RegexAST {
                     result = new ASTNode('^', current, result);
                 }
                 break;
-            case '|':
-                // Move forward
-                index++;
-
-                // Make an OR with the previous regex, and the next one
-                result = new ASTNode('|', current, matchRegex(regex, null));
+            case '[':
+                result = atom(regex, current, ASTNode.getCharClass(parseCharClass(regex)));
                 break;
             case '\\':
-                // Move past escape, and drop into default and treat as non-operation character
+                // Move past escape
                 index++;
+
+                // Escapes of character classes, e.g. \d
+                char[] escaped = escapeRanges(regex.charAt(index));
+                if (escaped != null) {
+                    index++;
+                    result = atom(regex, current, ASTNode.getCharClass(escaped));
+                    break;
+                }
+
+                // Drop into default and treat as non-operation character
             default:
                 // If character is unescaped quantifier, quantify current and break
                 if (isQuantifier(regex.charAt(index)) && regex.charAt(index-1) != '\\') {
@@ -344,25 +595,139 @@ public class RegexAST {
                 // Move forward
                 index++;
 
-                while (isQuantifier(regex.charAt(index))) {
-                    // If the character is followed immediately by a quantifier, add that to the ASTNode
-                    result = quantify(regex, result);
+                result = atom(regex, current, result);
+        }
+        return result;
+    }
+
+    /**
+     * Makes a balanced tree of ORs of some alternatives, so that its depth is logarithmic in their number
+     * @param alternatives The ASTNodes for the alternatives of an alternation.
+     * @param from The index of the first alternative to be included.
+     * @param to The index after the last alternative to be included.
+     * @return An ASTNode for the OR of alternatives from (inclusive) to to (exclusive).
+     */
+    private static ASTNode or(List<ASTNode> alternatives, int from, int to) {
+        if (to - from == 1)
+            return alternatives.get(from);
+        int middle = from + (to - from) / 2;
+        return new ASTNode('|', or(alternatives, from, middle), or(alternatives, middle, to));
+    }
+
+    /**
+     * Quantifies a character or character class which has just been matched, and concatenates it with the previous
+     * regex
+     * @param regex The regular expression to be turned into an Abstract Syntax Tree.
+     * @param current The ASTNode for the previously matched regex.
+     * @param atom The ASTNode for the character or character class just before index.
+     * @return An ASTNode for current followed by the (quantified) atom.
+     */
+    private ASTNode atom(String regex, ASTNode current, ASTNode atom) {
+        ASTNode result = atom;
+        while (isQuantifier(regex.charAt(index))) {
+            // If the character is followed immediately by a quantifier, add that to the ASTNode
+            result = quantify(regex, result);
+        }
+
+        // If there is a previous regex (that isn't emptyword) concatenate with it
+        if (current != null) {
+            // Concatenating emptyword is the same as just returning the other
+            if (result == null)
+                result = current;
+            else
+                result = new ASTNode('^', current, result);
+        }
+        return result;
+    }
+
+    /**
+     * Matches a character class [...] starting at index (at the '[').
+     * @param regex The regular expression to be turned into an Abstract Syntax Tree.
+     * @return The sorted disjoint ranges of the characters in the class.
+     */
+    private char[] parseCharClass(String regex) {
+        // Move past [
+        index++;
+        boolean negated = regex.charAt(index) == '^';
+        if (negated)
+            index++;
+
+        BitSet chars = new BitSet(Character.MAX_VALUE + 1);
+        while (true) {
+            // The regex ends with the ')' added around it
+            if (index >= regex.length() - 1)
+                throw new IllegalArgumentException("Unterminated character class in " + regex);
+            if (regex.charAt(index) == ']')
+                break;
+
+            char first = regex.charAt(index++);
+            if (first == '\\') {
+                char[] escaped = escapeRanges(regex.charAt(index));
+                if (escaped != null) {
+                    index++;
+                    for (int i = 0; i < escaped.length; i += 2) {
+                        chars.set(escaped[i], escaped[i + 1] + 1);
+                    }
+                    continue;
                 }
+                first = regex.charAt(index++);
+            }
 
-                // If there is a previous regex (that isn't emptyword) concatenate with it
-                if (current != null) {
-                    // Concatenating emptyword is the same as just returning the other
-                    if (result == null)
-                        result = current;
-                    else
-                        result = new ASTNode('^', current, result);
+            char last = first;
+            if (regex.charAt(index) == '-' && regex.charAt(index + 1) != ']') {
+                // Move past -
+                index++;
+                last = regex.charAt(index++);
+                if (last == '\\')
+                    last = regex.charAt(index++);
+                if (last < first)
+                    throw new IllegalArgumentException("Invalid range " + first + "-" + last + " in " + regex);
+            }
+            chars.set(first, last + 1);
+        }
+
+        // Move past ]
+        index++;
+
+        if (negated)
+            chars.flip(0, Character.MAX_VALUE + 1);
+        return toRanges(chars);
+    }
+
+    // Returns the ranges of the character class escape \c (e.g. \d), or null if \c is not a character class
+    private static char[] escapeRanges(char c) {
+        switch (c) {
+            case 'd':
+                return new char[]{'0', '9'};
+            case 'w':
+                return new char[]{'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+            case 's':
+                // \t, \n, \x0B, \f and \r are consecutive
+                return new char[]{'\t', '\r', ' ', ' '};
+            case 'D':
+            case 'W':
+            case 'S':
+                char[] ranges = escapeRanges(Character.toLowerCase(c));
+                BitSet chars = new BitSet(Character.MAX_VALUE + 1);
+                for (int i = 0; i < ranges.length; i += 2) {
+                    chars.set(ranges[i], ranges[i + 1] + 1);
                 }
+                chars.flip(0, Character.MAX_VALUE + 1);
+                return toRanges(chars);
+            default:
+                return null;
+        }
+    }
 
-                // If the next character is not ')', match more
-                if (regex.charAt(index) != ')')
-                    result = matchRegex(regex, result);
+    // Returns the runs of consecutive characters in chars as {first0, last0, first1, last1, ...}
+    private static char[] toRanges(BitSet chars) {
+        StringBuilder ranges = new StringBuilder();
+        for (int first = chars.nextSetBit(0); first >= 0; first = chars.nextSetBit(first + 1)) {
+            int end = chars.nextClearBit(first);
+            ranges.append((char) first).append((char) (end - 1));
+            first = end - 1;
         }
-        return result;
+        return ranges.toString().toCharArray();
     }
 
     /**
@@ -1,5 +1,7 @@
 import org.junit.jupiter.api.Test;
 
+import java.util.*;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class RegexASTTest {
@@ -144,4 +146,56 @@ class RegexASTTest {
         assertTrue(WILDCARD.isWildcard());
         assertFalse(makeAST("\\.").isWildcard());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void requiredLiteralsTest() {
+        assertEquals("", EMPTYWORD.requiredPrefix());
+        assertEquals("ab", CONCAT.requiredFactor());
+        assertEquals("", OR.requiredFactor());
+        assertEquals("", STAR.requiredPrefix());
+        assertEquals("ERROR", makeAST("ERROR.*").requiredPrefix());
+        assertEquals("GET /", makeAST("GET /(a|b)*").requiredPrefix());
+        assertEquals("T /index", makeAST("(GET|POST) /index").requiredFactor());
+        assertEquals("", makeAST("(GET|POST) /index").requiredPrefix());
+        assertEquals("Exception: ", makeAST(".*Exception: (a|b)+").requiredFactor());
+        assertEquals("ab", makeAST("ab(c|d)*").requiredPrefix());
+        assertEquals("abc", makeAST("ab(cd|ce)").requiredPrefix());
+        assertEquals("a", makeAST("a+").requiredPrefix());
+        assertEquals("aaa", makeAST("a{3}b?").requiredFactor());
+        assertEquals("", makeAST("(ab)?").requiredFactor());
+    }
+
+    @Test
+    public void literalStringsTest() {
+        assertEquals(Set.of(""), EMPTYWORD.literalStrings(10));
+        assertEquals(Set.of("a", "b"), OR.literalStrings(10));
+        assertEquals(List.of("if", "else", "while"), new ArrayList<>(makeAST("if|else|while").literalStrings(10)));
+        assertEquals(Set.of("ac", "ad", "bc", "bd", "c", "d"), makeAST("(a|b)?(c|d)").literalStrings(10));
+        assertNull(makeAST("(a|b)?(c|d)").literalStrings(5));
+        assertNull(STAR.literalStrings(10));
+        assertNull(WILDCARD.literalStrings(10));
+        assertEquals(Set.of(""), makeAST("\0*").literalStrings(10));
+    }
+
+    @Test
+    public void charClassTest() {
+        RegexAST digits = makeAST("[0-9]");
+        assertTrue(digits.isCharClass());
+        assertFalse(digits.isOperator());
+        assertArrayEquals(new char[]{'0', '9'}, digits.ranges());
+        assertEquals(digits, makeAST("\\d"));
+        assertEquals(digits, makeAST("[5-90-4]"));
+        assertNull(SINGLE_CHAR.ranges());
+
+        assertArrayEquals(new char[]{'-', '-', 'a', 'y'}, makeAST("[ab-y-]").ranges());
+        assertArrayEquals(new char[]{'-', '-', ']', ']'}, makeAST("[\\]\\-]").ranges());
+        assertArrayEquals(new char[]{'\0', '`', 'b', '\uFFFF'}, makeAST("[^a]").ranges());
+        assertArrayEquals(new char[]{'\t', '\r', ' ', ' ', '0', '9', 'a', 'c'}, makeAST("[\\sa-c\\d]").ranges());
+        assertEquals(makeAST("[^0-9]"), makeAST("\\D"));
+
+        assertEquals("(^ [a-c] (* [0-9_]))", makeAST("[a-c][0-9_]*").toString());
+        assertEquals("(| (^ x [.]) (* y))", makeAST("x[.]|y*").toString());
+        assertThrows(IllegalArgumentException.class, () -> makeAST("[a-c"));
+        assertThrows(IllegalArgumentException.class, () -> makeAST("[z-a]"));
+    }
+}
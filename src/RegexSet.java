@@ -0,0 +1,131 @@
+import java.util.*;
+
+/**
+ * <p>
+ * This class matches an input against a set of regular expressions at once, reporting which of them match
+ * as a {@link BitSet} of their indices, either matching the whole input or matching anywhere in it
+ * </p>
+ *
+ * <p>
+ * The regular expressions are combined into one {@link DFA} whose accepting states are labeled with the indices
+ * of the regular expressions they match (as for a {@link Lexer}), so that the input is scanned once however many
+ * regular expressions there are. Matching anywhere uses a second DFA for {@code .*} followed by each regular
+ * expression, which accepts (labeled with the regular expressions matched) at the end of every match in the input
+ * </p>
+ *
+ * <p>
+ * A RegexSet is never modified once it is constructed, so it can be used by any number of threads at once
+ * </p>
+ *
+ * <p>
+ * For supported ways of writing regular expressions, see {@link RegexAST}
+ * </p>
+ */
+public class RegexSet {
+    private final String[] regex;
+
+    // Both DFAs label accepting states with the indices of the regular expressions matched (as Strings)
+    private final DFA whole;
+    private final DFA anywhere;
+
+    // matched[dfa.label[state]] is the set of indices of the regular expressions matched in state
+    private final BitSet[] wholeMatched;
+    private final BitSet[] anywhereMatched;
+
+    /**
+     * Constructs a RegexSet of the given regular expressions
+     * @param regex A non-empty array of valid regular expressions where {@code regex[i]} has index i
+     */
+    public RegexSet(String... regex) {
+        if (regex.length == 0)
+            throw new IllegalArgumentException("A RegexSet needs at least one regular expression");
+
+        this.regex = regex.clone();
+        String[] names = new String[regex.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = Integer.toString(i);
+        }
+
+        NFA nfa = NFA.makeNFA(names, this.regex);
+        anywhere = new DFA(nfa.unanchored());
+        whole = new DFA(nfa);
+        wholeMatched = toIndices(whole.labels);
+        anywhereMatched = toIndices(anywhere.labels);
+    }
+
+    private static BitSet[] toIndices(List<Set<String>> labels) {
+        BitSet[] indices = new BitSet[labels.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = new BitSet();
+            for (String name : labels.get(i)) {
+                indices[i].set(Integer.parseInt(name));
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Returns the number of regular expressions in this RegexSet
+     * @return The number of regular expressions in this RegexSet
+     */
+    public int size() {
+        return regex.length;
+    }
+
+    /**
+     * Returns the regular expression with the given index
+     * @param index The index of a regular expression in this RegexSet
+     * @return The regular expression with index {@code index}
+     */
+    public String regex(int index) {
+        return regex[index];
+    }
+
+    /**
+     * Returns the indices of the regular expressions which match the whole of {@code input}
+     * @param input The input to match
+     * @return A new BitSet where bit i is set iff {@code regex[i]} matches {@code input}
+     */
+    public BitSet matches(CharSequence input) {
+        int state = whole.start;
+        for (int i = 0; i < input.length(); i++) {
+            state = whole.step(state, input.charAt(i));
+            if (state == DFA.DEAD)
+                return new BitSet();
+        }
+
+        int label = whole.label[state];
+        return label == DFA.NOT_ACCEPTING ? new BitSet() : (BitSet) wholeMatched[label].clone();
+    }
+
+    /**
+     * Returns the indices of the regular expressions which match any part of {@code input}<br>
+     * The scan stops early once every regular expression has matched
+     * @param input The input to search
+     * @return A new BitSet where bit i is set iff {@code regex[i]} matches some substring of {@code input}
+     */
+    public BitSet matchesAnywhere(CharSequence input) {
+        BitSet matched = new BitSet(regex.length);
+        int state = anywhere.start;
+        // The labels of accepting states seen so far are added to matched, but only when the label changes
+        // (an accepting state is usually followed by the same one or a non-accepting one)
+        int lastLabel = anywhere.label[state];
+        if (lastLabel != DFA.NOT_ACCEPTING)
+            matched.or(anywhereMatched[lastLabel]);
+
+        for (int i = 0; i < input.length(); i++) {
+            state = anywhere.step(state, input.charAt(i));
+            if (state == DFA.DEAD)
+                break;
+
+            int label = anywhere.label[state];
+            if (label != DFA.NOT_ACCEPTING && label != lastLabel) {
+                lastLabel = label;
+                matched.or(anywhereMatched[label]);
+                if (matched.cardinality() == regex.length)
+                    break;
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,50 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegexSetIntegrationTest {
+    @Test
+    public void matchesTest() {
+        RegexSet set = new RegexSet("error", "err(o|r)*", "warn", "(a|b|e|o|r)*");
+        assertEquals(4, set.size());
+        assertEquals(BitSet.valueOf(new long[]{0b1011}), set.matches("error"));
+        assertEquals(BitSet.valueOf(new long[]{0b1000}), set.matches(""));
+        assertEquals(new BitSet(), set.matches("warning"));
+        assertEquals(BitSet.valueOf(new long[]{0b1110}), set.matchesAnywhere("warning: err"));
+        // The empty word matches anywhere
+        assertEquals(BitSet.valueOf(new long[]{0b1000}), set.matchesAnywhere(""));
+    }
+
+    @Test
+    public void randomTest() {
+        String[] regex = {"(a|b)*a(a|b){2}", "ab|ba", "a+b?", "(ab)*", "b(a|c)*b", "cc"};
+        RegexSet set = new RegexSet(regex);
+        DFA[] dfas = new DFA[regex.length];
+        Finder[] finders = new Finder[regex.length];
+        for (int i = 0; i < regex.length; i++) {
+            dfas[i] = new DFA(regex[i]);
+            finders[i] = new Finder(regex[i]);
+        }
+
+        Random random = new Random(0);
+        for (int t = 0; t < 500; t++) {
+            StringBuilder input = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int i = 0; i < length; i++) {
+                input.append("abc".charAt(random.nextInt(3)));
+            }
+            String text = input.toString();
+
+            BitSet whole = new BitSet();
+            BitSet anywhere = new BitSet();
+            for (int i = 0; i < regex.length; i++) {
+                whole.set(i, dfas[i].match(text));
+                anywhere.set(i, finders[i].contains(text));
+            }
+            assertEquals(whole, set.matches(text), text);
+            assertEquals(anywhere, set.matchesAnywhere(text), text);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * This class tokenizes a stream of characters (from a {@link Reader} or {@link ReadableByteChannel})
+ * using the tokens of a {@link Lexer}, without reading the whole input into memory
+ * </p>
+ *
+ * <p>
+ * Input is read into a buffer which slides forward as tokens are consumed, tokens are matched by maximal munch
+ * across refills of the buffer, and the buffer only grows when a single token (including the lookahead needed
+ * to find its end) does not fit in it, so memory is bounded by the longest token rather than by the input
+ * </p>
+ *
+ * <p>
+ * IOExceptions thrown by the underlying stream are rethrown as {@link UncheckedIOException}s
+ * </p>
+ */
+public class StreamingLexer {
+    /**
+     * The initial size of the buffer in characters
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final Lexer lexer;
+    private final Reader reader;
+
+    // The unconsumed input is buffer[position] to buffer[limit - 1]
+    private char[] buffer;
+    private int position = 0;
+    private int limit = 0;
+    private boolean endOfInput = false;
+
+    // The last match is buffer[matchStart] to buffer[matchStart + matchLength - 1] (until the next refill)
+    private int matchStart;
+    private int matchLength;
+    private int lastType = DFA.NOT_ACCEPTING;
+
+    // True iff the last match has been found by hasNext but not yet returned
+    private boolean lookahead = false;
+
+    /**
+     * Constructs a StreamingLexer which reads from {@code reader} and matches the tokens of {@code lexer}
+     * @param lexer The Lexer whose tokens, names, priorities and omitted names are used
+     * @param reader The input to tokenize
+     */
+    public StreamingLexer(Lexer lexer, Reader reader) {
+        this(lexer, reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a StreamingLexer which reads from {@code reader} and matches the tokens of {@code lexer}
+     * @param lexer The Lexer whose tokens, names, priorities and omitted names are used
+     * @param reader The input to tokenize
+     * @param bufferSize The initial size of the buffer in characters
+     */
+    public StreamingLexer(Lexer lexer, Reader reader, int bufferSize) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("bufferSize must be positive");
+
+        this.lexer = lexer;
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * Constructs a StreamingLexer which reads from {@code channel} and matches the tokens of {@code lexer}
+     * @param lexer The Lexer whose tokens, names, priorities and omitted names are used
+     * @param channel The input to tokenize
+     * @param charset The encoding of the bytes read from {@code channel}
+     */
+    public StreamingLexer(Lexer lexer, ReadableByteChannel channel, Charset charset) {
+        this(lexer, Channels.newReader(channel, charset.newDecoder(), -1));
+    }
+
+    /**
+     * Returns the label of the last token matched
+     * @return The label of the last token matched (filtered for priority if applicable)
+     */
+    public String lastMatchType() {
+        return lastType == DFA.NOT_ACCEPTING ? null : lexer.typeName(lastType);
+    }
+
+    /**
+     * Returns the next token matched and not skipped
+     * @return The next token matched and not skipped in the input
+     */
+    public Lexer.Token nextToken() {
+        return new Lexer.Token(next(), lastMatchType());
+    }
+
+    /**
+     * Returns the next String matched and not skipped
+     * @return The next String matched and not skipped in the input
+     */
+    public String next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        lookahead = false;
+        return new String(buffer, matchStart, matchLength);
+    }
+
+    /**
+     * Returns the next token matched
+     * @return The next token matched in the input (possibly an omitted type)
+     */
+    public Lexer.Token nextMatchedToken() {
+        return new Lexer.Token(nextMatch(), lastMatchType());
+    }
+
+    /**
+     * Returns the next String matched
+     * @return The next String matched in the input (possibly an omitted type)
+     */
+    public String nextMatch() {
+        if (!hasNextMatch())
+            throw new NoSuchElementException();
+        lookahead = false;
+        return new String(buffer, matchStart, matchLength);
+    }
+
+    /**
+     * Returns true if the input has a next match
+     * @return True if the input has any more non-omitted tokens to be matched
+     */
+    public boolean hasNext() {
+        while (hasNextMatch()) {
+            if (!lexer.isOmitted(lastType))
+                return true;
+            lookahead = false;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the input has any tokens left
+     * @return True if the input has any tokens left to be matched (includes tokens to be skipped)
+     */
+    public boolean hasNextMatch() {
+        if (!lookahead)
+            lookahead = match() == Lexer.MATCHED;
+        return lookahead;
+    }
+
+    /**
+     * Returns the remaining unseen portion of the input, reading the rest of the input into memory<br>
+     * Note that a call to {@code hasNext} or {@code hasNextMatch} will cause this method to be missing
+     * the next token because that part of the input has been seen
+     * @return The remaining unseen portion of the input
+     */
+    public String remaining() {
+        while (fill()) {
+            // Read everything
+        }
+        String rest = new String(buffer, position, limit - position);
+        position = limit;
+        return rest;
+    }
+
+    // Finds the longest match at position, and if there is one consumes it (and returns Lexer.MATCHED)
+    private int match() {
+        if (position == limit && !fill()) {
+            lastType = DFA.NOT_ACCEPTING;
+            return Lexer.END_OF_INPUT;
+        }
+
+        int state = lexer.start;
+        // The match so far is the length characters at position (position moves when the buffer is refilled)
+        int length = 0;
+        int lastMatchLength = -1;
+        int type = DFA.NOT_ACCEPTING;
+
+        while (position + length < limit || fill()) {
+            state = lexer.step(state, buffer[position + length]);
+            if (state == DFA.DEAD)
+                break;
+
+            length++;
+            if (lexer.label[state] != DFA.NOT_ACCEPTING) {
+                lastMatchLength = length;
+                type = lexer.label[state];
+            }
+        }
+
+        lastType = type;
+        if (lastMatchLength == -1)
+            return Lexer.UNMATCHED;
+
+        matchStart = position;
+        matchLength = lastMatchLength;
+        position += lastMatchLength;
+        return Lexer.MATCHED;
+    }
+
+    // Reads more input into the buffer, moving the unconsumed input to the front of the buffer
+    // (and growing the buffer if it is full of unconsumed input), returns false if there is no more input
+    private boolean fill() {
+        if (endOfInput)
+            return false;
+
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            char[] larger = new char[2 * buffer.length];
+            System.arraycopy(buffer, 0, larger, 0, limit);
+            buffer = larger;
+        }
+
+        try {
+            int read;
+            do {
+                read = reader.read(buffer, limit, buffer.length - limit);
+            } while (read == 0);
+
+            if (read == -1) {
+                endOfInput = true;
+                return false;
+            }
+            limit += read;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}